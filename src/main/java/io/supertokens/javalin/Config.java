@@ -11,9 +11,13 @@
 
 package io.supertokens.javalin;
 
+import io.supertokens.javalin.core.PayloadCodec;
 import io.supertokens.javalin.core.SessionFunctions;
+import io.supertokens.javalin.core.querier.LoadBalancer;
 import org.jetbrains.annotations.TestOnly;
 
+import java.util.concurrent.Executor;
+
 public class Config {
 
     private static Config instance = null;
@@ -52,6 +56,49 @@ public class Config {
         return this;
     }
 
+    public Config withCoreConnections(int maxConnections, boolean http2) {
+        SessionFunctions.configCoreConnections(maxConnections, http2, null);
+        return this;
+    }
+
+    public Config withCoreConnections(int maxConnections, boolean http2, Executor executor) {
+        SessionFunctions.configCoreConnections(maxConnections, http2, executor);
+        return this;
+    }
+
+    public Config withLoadBalancer(LoadBalancer loadBalancer) {
+        SessionFunctions.configLoadBalancer(loadBalancer);
+        return this;
+    }
+
+    public Config withHedging(double percentile, double maxHedgeRate) {
+        SessionFunctions.configHedging(percentile, maxHedgeRate);
+        return this;
+    }
+
+    // sessions decode their JWT payload into type as soon as they are created. Only one type can be registered: another
+    // call with a different type throws IllegalArgumentException, and one with the same type replaces the codec
+    public <T> Config withJwtPayloadType(Class<T> type, PayloadCodec<T> codec) {
+        SessionFunctions.configJwtPayloadType(type, codec);
+        return this;
+    }
+
+    // any number of session data types can be registered, each is decoded only when it is read
+    public <T> Config withSessionDataType(Class<T> type, PayloadCodec<T> codec) {
+        SessionFunctions.configSessionDataType(type, codec);
+        return this;
+    }
+
+    public Config withHandshakeTimeout(long milliseconds) {
+        SessionFunctions.configHandshakeTimeout(milliseconds);
+        return this;
+    }
+
+    public Config withHandshakeSnapshotFile(String path) {
+        SessionFunctions.configHandshakeSnapshotFile(path);
+        return this;
+    }
+
     public Config withRefreshApiPath(String path) {
         this.refreshApiPath = path;
         return this;
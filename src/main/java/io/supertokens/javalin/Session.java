@@ -16,7 +16,9 @@
 
 package io.supertokens.javalin;
 
+import com.google.gson.JsonObject;
 import io.javalin.http.Context;
+import io.supertokens.javalin.core.PayloadCodecs;
 import io.supertokens.javalin.core.Utils;
 import io.supertokens.javalin.core.exception.GeneralException;
 import io.supertokens.javalin.core.exception.UnauthorisedException;
@@ -32,15 +34,34 @@ public class Session {
     private String accessToken;
     private final String sessionHandle;
     private final String userId;
-    private Map<String, Object> userDataInJWT;
+    private JsonObject userDataInJWT;
+    // the payload decoded into the class registered with Config.withJwtPayloadType, or the last one asked for
+    private Object decodedUserDataInJWT;
+    // why the payload could not be decoded into the registered class, only thrown once that class is asked for
+    private GeneralException userDataInJWTError;
     private final Context ctx;
 
-    Session(String accessToken, String sessionHandle, String userId, Map<String, Object>  userDataInJWT, Context ctx) {
+    Session(String accessToken, String sessionHandle, String userId, JsonObject userDataInJWT, Context ctx) {
         this.accessToken = accessToken;
         this.sessionHandle = sessionHandle;
         this.userId = userId;
-        this.userDataInJWT = userDataInJWT;
         this.ctx = ctx;
+        setUserDataInJWT(userDataInJWT);
+    }
+
+    /*
+     * Handlers that never read the typed payload, and payloads written before its class was registered, must not fail
+     * because of it, so a decoding failure is kept for getJWTPayload instead of being thrown here.
+     */
+    private void setUserDataInJWT(JsonObject userDataInJWT) {
+        this.userDataInJWT = userDataInJWT;
+        try {
+            this.decodedUserDataInJWT = PayloadCodecs.JWT_PAYLOAD.decodeRegistered(userDataInJWT);
+            this.userDataInJWTError = null;
+        } catch (GeneralException e) {
+            this.decodedUserDataInJWT = null;
+            this.userDataInJWTError = e;
+        }
     }
 
     public void revokeSession() throws GeneralException {
@@ -59,8 +80,16 @@ public class Session {
     }
 
     public Map<String, Object>  getSessionData() throws GeneralException, UnauthorisedException {
+        return Utils.jsonObjectToMap(getSessionDataJson());
+    }
+
+    public <T> T getSessionData(@NotNull Class<T> type) throws GeneralException, UnauthorisedException {
+        return PayloadCodecs.SESSION_DATA.decode(getSessionDataJson(), type);
+    }
+
+    private JsonObject getSessionDataJson() throws GeneralException, UnauthorisedException {
         try {
-            return Utils.jsonObjectToMap(SessionFunctions.getSessionData(this.sessionHandle));
+            return SessionFunctions.getSessionData(this.sessionHandle);
         } catch (UnauthorisedException err) {
             HandshakeInfo handShakeInfo = HandshakeInfo.getInstance();
             CookieAndHeaders.clearSessionFromCookie(
@@ -76,6 +105,11 @@ public class Session {
         }
     }
 
+    public <T> void updateSessionData(@NotNull T newSessionData, @NotNull Class<T> type)
+            throws GeneralException, UnauthorisedException {
+        updateSessionData(Utils.jsonObjectToMap(PayloadCodecs.SESSION_DATA.encode(newSessionData, type)));
+    }
+
     public void updateSessionData(@NotNull Map<String, Object>  newSessionData) throws GeneralException, UnauthorisedException {
         try {
             SessionFunctions.updateSessionData(this.sessionHandle, Utils.mapToJsonObject(newSessionData));
@@ -98,8 +132,20 @@ public class Session {
         return this.userId;
     }
 
+    // a read-only view over the payload as decoded from the core response or the access token
     public Map<String, Object>  getJWTPayload() {
-        return this.userDataInJWT;
+        return Utils.jsonObjectToMap(this.userDataInJWT);
+    }
+
+    // the registered JWT payload class is decoded when the session is created, any other class when it is asked for
+    public <T> T getJWTPayload(@NotNull Class<T> type) throws GeneralException {
+        if (!type.isInstance(this.decodedUserDataInJWT)) {
+            if (this.userDataInJWTError != null && PayloadCodecs.JWT_PAYLOAD.isRegistered(type)) {
+                throw this.userDataInJWTError;
+            }
+            this.decodedUserDataInJWT = PayloadCodecs.JWT_PAYLOAD.decode(this.userDataInJWT, type);
+        }
+        return type.cast(this.decodedUserDataInJWT);
     }
 
     public String getSessionHandle() {
@@ -110,11 +156,16 @@ public class Session {
         return this.accessToken;
     }
 
+    public <T> void updateJWTPayload(@NotNull T newJWTPayload, @NotNull Class<T> type)
+            throws UnauthorisedException, GeneralException {
+        updateJWTPayload(Utils.jsonObjectToMap(PayloadCodecs.JWT_PAYLOAD.encode(newJWTPayload, type)));
+    }
+
     public void updateJWTPayload(@NotNull Map<String, Object>  newJWTPayload) throws UnauthorisedException, GeneralException {
         try {
             SessionTokens sessionTokens = SessionFunctions.regenerateSession(this.accessToken,
                     Utils.mapToJsonObject(newJWTPayload));
-            this.userDataInJWT = Utils.jsonObjectToMap(sessionTokens.userDataInJWT);
+            setUserDataInJWT(sessionTokens.userDataInJWT);
             if (sessionTokens.accessToken != null) {
                 this.accessToken = sessionTokens.accessToken.token;
                 CookieAndHeaders.attachAccessTokenToCookie(this.ctx, sessionTokens.accessToken);
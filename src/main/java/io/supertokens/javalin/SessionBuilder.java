@@ -17,11 +17,14 @@
 package io.supertokens.javalin;
 
 import io.javalin.http.Context;
+import io.supertokens.javalin.core.PayloadCodecs;
+import io.supertokens.javalin.core.Utils;
 import io.supertokens.javalin.core.exception.GeneralException;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class SessionBuilder {
 
@@ -46,11 +49,23 @@ public class SessionBuilder {
         this.jwtPayload = jwtPayload;
     }
 
+    public <T> void withJWTPayload(@NotNull T jwtPayload, @NotNull Class<T> type) throws GeneralException {
+        this.jwtPayload = Utils.jsonObjectToMap(PayloadCodecs.JWT_PAYLOAD.encode(jwtPayload, type));
+    }
+
     public void withSessionData(@NotNull Map<String, Object>  sessionData) {
         this.sessionData = sessionData;
     }
 
+    public <T> void withSessionData(@NotNull T sessionData, @NotNull Class<T> type) throws GeneralException {
+        this.sessionData = Utils.jsonObjectToMap(PayloadCodecs.SESSION_DATA.encode(sessionData, type));
+    }
+
     public Session create() throws GeneralException {
         return SuperTokens.createNewSession(this.ctx, this.userId, this.jwtPayload, this.sessionData);
     }
+
+    public CompletableFuture<Session> createAsync() {
+        return SuperTokens.createNewSessionAsync(this.ctx, this.userId, this.jwtPayload, this.sessionData);
+    }
 }
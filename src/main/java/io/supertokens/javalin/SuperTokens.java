@@ -18,6 +18,7 @@ package io.supertokens.javalin;
 
 import io.javalin.http.Context;
 import io.javalin.http.Handler;
+import io.supertokens.javalin.core.PayloadCodecs;
 import io.supertokens.javalin.core.Utils;
 import io.supertokens.javalin.core.exception.GeneralException;
 import io.supertokens.javalin.core.exception.TokenTheftDetectedException;
@@ -29,6 +30,8 @@ import io.supertokens.javalin.core.SessionFunctions;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class SuperTokens {
 
@@ -47,7 +50,22 @@ public class SuperTokens {
                                     @NotNull Map<String, Object> sessionData) throws GeneralException {
         SessionTokens sessionTokens = SessionFunctions.createNewSession(userId, Utils.mapToJsonObject(jwtPayload),
                 Utils.mapToJsonObject(sessionData));
+        return onNewSession(ctx, sessionTokens);
+    }
+
+    static CompletableFuture<Session> createNewSessionAsync(@NotNull Context ctx, @NotNull String userId,
+                                                            @NotNull Map<String, Object> jwtPayload,
+                                                            @NotNull Map<String, Object> sessionData) {
+        try {
+            return SessionFunctions.createNewSessionAsync(userId, Utils.mapToJsonObject(jwtPayload),
+                    Utils.mapToJsonObject(sessionData))
+                    .thenApply(Utils.unchecked(sessionTokens -> onNewSession(ctx, sessionTokens)));
+        } catch (GeneralException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
+    private static Session onNewSession(Context ctx, SessionTokens sessionTokens) throws GeneralException {
         CookieAndHeaders.attachAccessTokenToCookie(ctx, sessionTokens.accessToken);
         CookieAndHeaders.attachRefreshTokenToCookie(ctx, sessionTokens.refreshToken);
         CookieAndHeaders.setIdRefreshTokenInHeaderAndCookie(ctx, sessionTokens.idRefreshToken);
@@ -55,13 +73,39 @@ public class SuperTokens {
             CookieAndHeaders.setAntiCsrfTokenInHeaders(ctx, sessionTokens.antiCsrfToken);
         }
         return new Session(sessionTokens.accessToken.token, sessionTokens.handle,
-                sessionTokens.userId, Utils.jsonObjectToMap(sessionTokens.userDataInJWT), ctx);
+                sessionTokens.userId, sessionTokens.userDataInJWT, ctx);
     }
 
     public static Session getSession(@NotNull Context ctx, boolean doAntiCSRFCheck)
             throws TryRefreshTokenException, UnauthorisedException, GeneralException {
         CookieAndHeaders.saveFrontendInfoFromRequest(ctx);
+        String accessToken = getAccessTokenForSession(ctx);
+        try {
+            String antiCsrfToken = CookieAndHeaders.getAntiCSRFTokenFromHeaders(ctx);
+            SessionTokens response = SessionFunctions.getSession(accessToken, antiCsrfToken, doAntiCSRFCheck);
+            return onGetSession(ctx, accessToken, response);
+        } catch (UnauthorisedException e) {
+            clearSessionFromCookie(ctx);
+            throw e;
+        }
+    }
+
+    public static CompletableFuture<Session> getSessionAsync(@NotNull Context ctx, boolean doAntiCSRFCheck) {
+        CookieAndHeaders.saveFrontendInfoFromRequest(ctx);
+        String accessToken;
+        try {
+            accessToken = getAccessTokenForSession(ctx);
+        } catch (TryRefreshTokenException | UnauthorisedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String antiCsrfToken = CookieAndHeaders.getAntiCSRFTokenFromHeaders(ctx);
+        return clearSessionFromCookieOnError(ctx,
+                SessionFunctions.getSessionAsync(accessToken, antiCsrfToken, doAntiCSRFCheck)
+                        .thenApply(Utils.unchecked(response -> onGetSession(ctx, accessToken, response))));
+    }
 
+    private static String getAccessTokenForSession(Context ctx)
+            throws TryRefreshTokenException, UnauthorisedException {
         String idRefreshToken = CookieAndHeaders.getIdRefreshTokenFromCookie(ctx);
         if (idRefreshToken == null) {
             throw new UnauthorisedException("idRefreshToken missing");
@@ -71,61 +115,78 @@ public class SuperTokens {
         if (accessToken == null) {
             throw new TryRefreshTokenException("access token missing in cookies");
         }
-        try {
-            String antiCsrfToken = CookieAndHeaders.getAntiCSRFTokenFromHeaders(ctx);
-            SessionTokens response = SessionFunctions.getSession(accessToken, antiCsrfToken, doAntiCSRFCheck);
-            if (response.accessToken != null) {
-                CookieAndHeaders.attachAccessTokenToCookie(ctx, response.accessToken);
-                accessToken = response.accessToken.token;
-            }
-            return new Session(accessToken, response.handle, response.userId, Utils.jsonObjectToMap(response.userDataInJWT), ctx);
-        } catch (UnauthorisedException e) {
-            HandshakeInfo handShakeInfo = HandshakeInfo.getInstance();
-            CookieAndHeaders.clearSessionFromCookie(
-                    ctx,
-                    handShakeInfo.cookieDomain,
-                    handShakeInfo.cookieSecure,
-                    handShakeInfo.accessTokenPath,
-                    handShakeInfo.refreshTokenPath,
-                    handShakeInfo.idRefreshTokenPath,
-                    handShakeInfo.cookieSameSite);
-            throw e;
+        return accessToken;
+    }
+
+    private static Session onGetSession(Context ctx, String accessToken, SessionTokens response)
+            throws GeneralException {
+        if (response.accessToken != null) {
+            CookieAndHeaders.attachAccessTokenToCookie(ctx, response.accessToken);
+            accessToken = response.accessToken.token;
         }
+        return new Session(accessToken, response.handle, response.userId, response.userDataInJWT, ctx);
     }
 
     public static Session refreshSession(@NotNull Context ctx)
             throws UnauthorisedException, TokenTheftDetectedException, GeneralException {
         CookieAndHeaders.saveFrontendInfoFromRequest(ctx);
-        String inputRefreshToken = CookieAndHeaders.getRefreshTokenFromCookie(ctx);
-        if (inputRefreshToken == null) {
-            throw new UnauthorisedException("Missing auth tokens in cookies. Have you set the correct refresh API path in your frontend and SuperTokens config?");
-        }
+        String inputRefreshToken = getRefreshTokenForSession(ctx);
         try {
             String antiCsrfToken = CookieAndHeaders.getAntiCSRFTokenFromHeaders(ctx);
             SessionTokens sessionTokens = SessionFunctions.refreshSession(inputRefreshToken, antiCsrfToken);
-            CookieAndHeaders.attachAccessTokenToCookie(ctx, sessionTokens.accessToken);
-            CookieAndHeaders.attachRefreshTokenToCookie(ctx, sessionTokens.refreshToken);
-            CookieAndHeaders.setIdRefreshTokenInHeaderAndCookie(ctx, sessionTokens.idRefreshToken);
-            if (sessionTokens.antiCsrfToken != null) {
-                CookieAndHeaders.setAntiCsrfTokenInHeaders(ctx, sessionTokens.antiCsrfToken);
-            }
-            return new Session(sessionTokens.accessToken.token, sessionTokens.handle,
-                    sessionTokens.userId, Utils.jsonObjectToMap(sessionTokens.userDataInJWT), ctx);
-
+            return onNewSession(ctx, sessionTokens);
         } catch (UnauthorisedException | TokenTheftDetectedException e) {
-            HandshakeInfo handShakeInfo = HandshakeInfo.getInstance();
-            CookieAndHeaders.clearSessionFromCookie(
-                    ctx,
-                    handShakeInfo.cookieDomain,
-                    handShakeInfo.cookieSecure,
-                    handShakeInfo.accessTokenPath,
-                    handShakeInfo.refreshTokenPath,
-                    handShakeInfo.idRefreshTokenPath,
-                    handShakeInfo.cookieSameSite);
+            clearSessionFromCookie(ctx);
             throw e;
         }
     }
 
+    public static CompletableFuture<Session> refreshSessionAsync(@NotNull Context ctx) {
+        CookieAndHeaders.saveFrontendInfoFromRequest(ctx);
+        String inputRefreshToken;
+        try {
+            inputRefreshToken = getRefreshTokenForSession(ctx);
+        } catch (UnauthorisedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String antiCsrfToken = CookieAndHeaders.getAntiCSRFTokenFromHeaders(ctx);
+        return clearSessionFromCookieOnError(ctx,
+                SessionFunctions.refreshSessionAsync(inputRefreshToken, antiCsrfToken)
+                        .thenApply(Utils.unchecked(sessionTokens -> onNewSession(ctx, sessionTokens))));
+    }
+
+    private static String getRefreshTokenForSession(Context ctx) throws UnauthorisedException {
+        String inputRefreshToken = CookieAndHeaders.getRefreshTokenFromCookie(ctx);
+        if (inputRefreshToken == null) {
+            throw new UnauthorisedException("Missing auth tokens in cookies. Have you set the correct refresh API path in your frontend and SuperTokens config?");
+        }
+        return inputRefreshToken;
+    }
+
+    private static void clearSessionFromCookie(Context ctx) throws GeneralException {
+        HandshakeInfo handShakeInfo = HandshakeInfo.getInstance();
+        CookieAndHeaders.clearSessionFromCookie(
+                ctx,
+                handShakeInfo.cookieDomain,
+                handShakeInfo.cookieSecure,
+                handShakeInfo.accessTokenPath,
+                handShakeInfo.refreshTokenPath,
+                handShakeInfo.idRefreshTokenPath,
+                handShakeInfo.cookieSameSite);
+    }
+
+    // the cookies are cleared before the returned future completes, so while the response is still open
+    private static <T> CompletableFuture<T> clearSessionFromCookieOnError(Context ctx, CompletableFuture<T> future) {
+        return future.whenComplete((result, error) -> {
+            Throwable cause = error == null ? null : Utils.unwrapFutureException(error);
+            if (cause instanceof UnauthorisedException || cause instanceof TokenTheftDetectedException) {
+                try {
+                    clearSessionFromCookie(ctx);
+                } catch (GeneralException ignored) {}
+            }
+        });
+    }
+
     public static String[] revokeAllSessionsForUser(@NotNull String userId) throws GeneralException {
         return SessionFunctions.revokeAllSessionsForUser(userId);
     }
@@ -147,11 +208,45 @@ public class SuperTokens {
         return Utils.jsonObjectToMap(SessionFunctions.getSessionData(sessionHandle));
     }
 
+    public static <T> T getSessionData(@NotNull String sessionHandle, @NotNull Class<T> type)
+            throws GeneralException, UnauthorisedException {
+        return PayloadCodecs.SESSION_DATA.decode(SessionFunctions.getSessionData(sessionHandle), type);
+    }
+
     public static void updateSessionData(@NotNull String sessionHandle, @NotNull Map<String, Object> sessionData)
             throws GeneralException, UnauthorisedException {
         SessionFunctions.updateSessionData(sessionHandle, Utils.mapToJsonObject(sessionData));
     }
 
+    public static CompletableFuture<String[]> revokeAllSessionsForUserAsync(@NotNull String userId) {
+        return SessionFunctions.revokeAllSessionsForUserAsync(userId);
+    }
+
+    public static CompletableFuture<String[]> getAllSessionHandlesForUserAsync(@NotNull String userId) {
+        return SessionFunctions.getAllSessionHandlesForUserAsync(userId);
+    }
+
+    public static CompletableFuture<Boolean> revokeSessionAsync(@NotNull String sessionHandle) {
+        return SessionFunctions.revokeSessionAsync(sessionHandle);
+    }
+
+    public static CompletableFuture<String[]> revokeMultipleSessionsAsync(@NotNull String[] sessionHandles) {
+        return SessionFunctions.revokeMultipleSessionsAsync(sessionHandles);
+    }
+
+    public static CompletableFuture<Map<String, Object>> getSessionDataAsync(@NotNull String sessionHandle) {
+        return SessionFunctions.getSessionDataAsync(sessionHandle).thenApply(Utils::jsonObjectToMap);
+    }
+
+    public static CompletableFuture<Void> updateSessionDataAsync(@NotNull String sessionHandle,
+                                                                 @NotNull Map<String, Object> sessionData) {
+        try {
+            return SessionFunctions.updateSessionDataAsync(sessionHandle, Utils.mapToJsonObject(sessionData));
+        } catch (GeneralException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     public static void setRelevantHeadersForOptionsAPI(@NotNull Context ctx) {
         CookieAndHeaders.setOptionsAPIHeader(ctx);
     }
@@ -161,11 +256,29 @@ public class SuperTokens {
         return Utils.jsonObjectToMap(SessionFunctions.getJWTPayload(sessionHandle));
     }
 
+    public static <T> T getJWTPayload(@NotNull String sessionHandle, @NotNull Class<T> type)
+            throws GeneralException, UnauthorisedException {
+        return PayloadCodecs.JWT_PAYLOAD.decode(SessionFunctions.getJWTPayload(sessionHandle), type);
+    }
+
     public static void updateJWTPayload(@NotNull String sessionHandle, @NotNull Map<String, Object> newJWTPayload)
             throws GeneralException, UnauthorisedException {
         SessionFunctions.updateJWTPayload(sessionHandle, Utils.mapToJsonObject(newJWTPayload));
     }
 
+    public static CompletableFuture<Map<String, Object>> getJWTPayloadAsync(@NotNull String sessionHandle) {
+        return SessionFunctions.getJWTPayloadAsync(sessionHandle).thenApply(Utils::jsonObjectToMap);
+    }
+
+    public static CompletableFuture<Void> updateJWTPayloadAsync(@NotNull String sessionHandle,
+                                                                @NotNull Map<String, Object> newJWTPayload) {
+        try {
+            return SessionFunctions.updateJWTPayloadAsync(sessionHandle, Utils.mapToJsonObject(newJWTPayload));
+        } catch (GeneralException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     // -----------------------------------------
 
     public static Session getFromContext(Context ctx) {
@@ -178,34 +291,85 @@ public class SuperTokens {
 
     public static Handler middleware(final Boolean antiCsrfCheck) {
         return ctx -> {
-            Boolean antiCsrfCheckInLambda = antiCsrfCheck;
-            if (ctx.req.getMethod().equalsIgnoreCase("options") ||
-                    ctx.req.getMethod().equalsIgnoreCase("trace")) {
+            if (isOptionsOrTrace(ctx)) {
                 return;
             }
-            String path = ctx.path().split("\\?")[0];
             HandshakeInfo handshakeInfo = HandshakeInfo.getInstance();
-            String refreshTokenPath = handshakeInfo.refreshTokenPath;
-            if (Config.getInstance().refreshApiPath != null) {
-                refreshTokenPath = Config.getInstance().refreshApiPath;
-            }
-            if (
-                    (refreshTokenPath.equals(path)) ||
-                    (refreshTokenPath.equals(path + "/")) ||
-                    ((refreshTokenPath + "/").equals(path))
-                    &&
-                    ctx.req.getMethod().equalsIgnoreCase("post")
-            ) {
+            if (isRefreshRequest(ctx, handshakeInfo)) {
                 ctx.attribute(CONTEXT_ATTRIBUTE_KEY, refreshSession(ctx));
             } else {
-                if (antiCsrfCheckInLambda == null) {
-                    antiCsrfCheckInLambda = !ctx.req.getMethod().equalsIgnoreCase("get");
+                ctx.attribute(CONTEXT_ATTRIBUTE_KEY, getSession(ctx, doAntiCsrfCheck(ctx, antiCsrfCheck)));
+            }
+        };
+    }
+
+    public static Handler asyncMiddleware(@NotNull final Handler handler) {
+        return asyncMiddleware(null, handler);
+    }
+
+    /*
+     * Unlike middleware(), this wraps the endpoint handler instead of being registered as a before handler: Javalin
+     * runs before handlers and the endpoint synchronously, so a session that is still being fetched from the core
+     * could not be waited for there. When the session can be verified locally, handler runs right away on the same
+     * thread. Otherwise the request is suspended with ctx.result(future) and handler runs once the core has replied.
+     */
+    public static Handler asyncMiddleware(final Boolean antiCsrfCheck, @NotNull final Handler handler) {
+        return ctx -> {
+            if (isOptionsOrTrace(ctx)) {
+                handler.handle(ctx);
+                return;
+            }
+            CompletableFuture<Session> session = HandshakeInfo.getInstanceAsync().thenCompose(handshakeInfo ->
+                    isRefreshRequest(ctx, handshakeInfo) ? refreshSessionAsync(ctx) :
+                            getSessionAsync(ctx, doAntiCsrfCheck(ctx, antiCsrfCheck)));
+            if (session.isDone()) {
+                try {
+                    ctx.attribute(CONTEXT_ATTRIBUTE_KEY, session.join());
+                } catch (CompletionException e) {
+                    Throwable cause = Utils.unwrapFutureException(e);
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
                 }
-                ctx.attribute(CONTEXT_ATTRIBUTE_KEY, getSession(ctx, antiCsrfCheckInLambda));
+                handler.handle(ctx);
+                return;
             }
+            ctx.result(session.thenCompose(Utils.unchecked(result -> {
+                ctx.attribute(CONTEXT_ATTRIBUTE_KEY, result);
+                handler.handle(ctx);
+                // the handler may itself have set an asynchronous result, otherwise whatever it set is sent as is
+                CompletableFuture<?> handlerResult = ctx.resultFuture();
+                return handlerResult == null ? CompletableFuture.completedFuture(null) : handlerResult;
+            })));
         };
     }
 
+    private static boolean isOptionsOrTrace(Context ctx) {
+        return ctx.req.getMethod().equalsIgnoreCase("options") ||
+                ctx.req.getMethod().equalsIgnoreCase("trace");
+    }
+
+    private static boolean isRefreshRequest(Context ctx, HandshakeInfo handshakeInfo) {
+        String path = ctx.path().split("\\?")[0];
+        String refreshTokenPath = handshakeInfo.refreshTokenPath;
+        if (Config.getInstance().refreshApiPath != null) {
+            refreshTokenPath = Config.getInstance().refreshApiPath;
+        }
+        return (refreshTokenPath.equals(path)) ||
+                (refreshTokenPath.equals(path + "/")) ||
+                ((refreshTokenPath + "/").equals(path))
+                &&
+                ctx.req.getMethod().equalsIgnoreCase("post");
+    }
+
+    private static boolean doAntiCsrfCheck(Context ctx, Boolean antiCsrfCheck) {
+        if (antiCsrfCheck == null) {
+            return !ctx.req.getMethod().equalsIgnoreCase("get");
+        }
+        return antiCsrfCheck;
+    }
+
     public static SuperTokensExceptionHandler exceptionHandler() {
         return new SuperTokensExceptionHandler();
     }
@@ -26,9 +26,19 @@ public class DeviceInfo {
     private static DeviceInfo instance = null;
     private final List<Device> frontendSDK = new ArrayList<>();
 
+    // changes whenever the list of frontend SDKs does
+    private static volatile long version = 0;
+
     @TestOnly
     public static void reset() {
-        instance = null;
+        synchronized (DeviceInfo.class) {
+            instance = null;
+            version++;
+        }
+    }
+
+    public static long getVersion() {
+        return version;
     }
 
     private DeviceInfo() {}
@@ -65,6 +75,7 @@ public class DeviceInfo {
                 }
             }
             this.frontendSDK.add(device);
+            version++;
         }
     }
 
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+
+class GsonPayloadCodec<T> implements PayloadCodec<T> {
+
+    private static final Gson gson = new Gson();
+
+    private final TypeAdapter<T> adapter;
+
+    GsonPayloadCodec(Class<T> type) {
+        this.adapter = gson.getAdapter(type);
+    }
+
+    @Override
+    public T decode(JsonObject json) {
+        return this.adapter.fromJsonTree(json);
+    }
+
+    @Override
+    public JsonObject encode(T value) {
+        return this.adapter.toJsonTree(value).getAsJsonObject();
+    }
+}
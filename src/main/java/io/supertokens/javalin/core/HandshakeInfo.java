@@ -16,17 +16,50 @@
 
 package io.supertokens.javalin.core;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import io.supertokens.javalin.core.accessToken.RejectedSignatureCache;
 import io.supertokens.javalin.core.exception.GeneralException;
+import io.supertokens.javalin.core.informationHolders.JwtSigningKey;
 import io.supertokens.javalin.core.querier.Querier;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * An immutable snapshot of the handshake with the core. Changes to the signing key publish a new snapshot through a
+ * single atomic swap, so a reader holding an instance always sees a consistent key and expiry without locking.
+ */
 public class HandshakeInfo {
 
-    private static HandshakeInfo instance = null;
+    private static final AtomicReference<HandshakeInfo> instance = new AtomicReference<>(null);
+
+    private static final AtomicReference<CompletableFuture<HandshakeInfo>> handshakeInProgress =
+            new AtomicReference<>(null);
+
+    public static final long DEFAULT_HANDSHAKE_TIMEOUT = 5000;
+
+    private static final long FAILED_HANDSHAKE_BACKOFF = 1000;
+
+    private static volatile long handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+
+    private static volatile FailedHandshake lastFailure = null;
+
+    private static final int MAX_JWT_SIGNING_KEYS = 3;
+
+    private static final String SNAPSHOT_KEYS_MEMBER = "jwtSigningPublicKeys";
 
-    public  String jwtSigningPublicKey;
+    public final String jwtSigningPublicKey;
     @Nullable
     public final String cookieDomain;
     public final boolean cookieSecure;
@@ -34,37 +67,250 @@ public class HandshakeInfo {
     public final String refreshTokenPath;
     public final boolean enableAntiCsrf;
     public final boolean accessTokenBlacklistingEnabled;
-    public  long jwtSigningPublicKeyExpiryTime;
+    public final long jwtSigningPublicKeyExpiryTime;
     public final String cookieSameSite;
     public final String idRefreshTokenPath;
     public final int sessionExpiredStatusCode;
 
+    // most recent first, the first one is always jwtSigningPublicKey
+    private final List<JwtSigningKey> jwtSigningPublicKeys;
+
+    // read from the on disk snapshot at startup, and still to be confirmed by a handshake with the core
+    private final boolean restoredFromSnapshot;
+
     @TestOnly
     public static void reset() {
-        instance = null;
+        SigningKeyRefresher.cancel();
+        handshakeInProgress.set(null);
+        lastFailure = null;
+        handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+        HandshakeSnapshot.setFile(null);
+        instance.set(null);
     }
 
+    public static void setHandshakeTimeout(long timeout) {
+        handshakeTimeout = timeout;
+    }
+
+    public static void setSnapshotFile(@Nullable String path) {
+        HandshakeSnapshot.setFile(path);
+        if (path == null || !Querier.isInitialised()) {
+            // restored once the hosts are known, in SessionFunctions.config
+            return;
+        }
+        HandshakeInfo current = instance.get();
+        if (current == null) {
+            HandshakeSnapshot.restore();
+            startHandshake();
+        } else if (!current.restoredFromSnapshot) {
+            HandshakeSnapshot.save(current);
+        }
+    }
+
+    static boolean restore(HandshakeInfo info) {
+        if (instance.compareAndSet(null, info)) {
+            SigningKeyRefresher.schedule(info.jwtSigningPublicKeyExpiryTime);
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Waits at most the handshake timeout for the first handshake with the core. Only one handshake is ever in
+     * flight, and it runs on its own thread so that no request thread holds a lock while talking to the core. After
+     * a failure, callers get that failure straight away for a short while instead of all queueing on a new attempt.
+     */
     public static HandshakeInfo getInstance() throws GeneralException {
-        if (HandshakeInfo.instance == null) {
-            synchronized (HandshakeInfo.class) {
-                if (instance == null) {
-                    JsonObject response = Querier.getInstance().sendPostRequest("handshake", "/handshake", new JsonObject());
-                    HandshakeInfo.instance = new HandshakeInfo(
-                            response.get("jwtSigningPublicKey").getAsString(),
-                            response.has("cookieDomain") ? response.get("cookieDomain").getAsString(): null,
-                            response.get("cookieSecure").getAsBoolean(),
-                            response.get("accessTokenPath").getAsString(),
-                            response.get("refreshTokenPath").getAsString(),
-                            response.get("enableAntiCsrf").getAsBoolean(),
-                            response.get("accessTokenBlacklistingEnabled").getAsBoolean(),
-                            response.get("jwtSigningPublicKeyExpiryTime").getAsLong(),
-                            response.get("cookieSameSite").getAsString(),
-                            response.get("idRefreshTokenPath").getAsString(),
-                            response.get("sessionExpiredStatusCode").getAsInt());
+        HandshakeInfo info = getPublished();
+        if (info != null) {
+            return info;
+        }
+        try {
+            return startHandshake().get(handshakeTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new GeneralException("Handshake with the SuperTokens core did not complete in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeneralException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw new GeneralException((Exception) cause);
+            }
+            throw new GeneralException(e);
+        }
+    }
+
+    /*
+     * Same as getInstance, but waits for the first handshake without blocking the calling thread.
+     */
+    public static CompletableFuture<HandshakeInfo> getInstanceAsync() {
+        HandshakeInfo info;
+        try {
+            info = getPublished();
+        } catch (GeneralException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (info != null) {
+            return CompletableFuture.completedFuture(info);
+        }
+        // copied so that the timeout only applies to this caller and not to the shared handshake
+        return startHandshake().copy().orTimeout(handshakeTimeout, TimeUnit.MILLISECONDS)
+                .handle((result, error) -> {
+                    if (error == null) {
+                        return result;
+                    }
+                    Throwable cause = Utils.unwrapFutureException(error);
+                    if (cause instanceof TimeoutException) {
+                        throw new CompletionException(
+                                new GeneralException("Handshake with the SuperTokens core did not complete in time"));
+                    }
+                    if (cause instanceof Exception) {
+                        throw new CompletionException(Utils.toGeneralException((Exception) cause));
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    // null if the caller has to wait for a handshake
+    @Nullable
+    private static HandshakeInfo getPublished() throws GeneralException {
+        HandshakeInfo info = instance.get();
+        if (info != null) {
+            if (info.restoredFromSnapshot && handshakeInProgress.get() == null && !isBackingOff()) {
+                startHandshake();
+            }
+            return info;
+        }
+        FailedHandshake failure = lastFailure;
+        if (failure != null && failure.time + FAILED_HANDSHAKE_BACKOFF > System.currentTimeMillis()) {
+            throw new GeneralException(failure.exception);
+        }
+        return null;
+    }
+
+    private static boolean isBackingOff() {
+        FailedHandshake failure = lastFailure;
+        return failure != null && failure.time + FAILED_HANDSHAKE_BACKOFF > System.currentTimeMillis();
+    }
+
+    public static CompletableFuture<HandshakeInfo> startHandshake() {
+        while (true) {
+            HandshakeInfo info = instance.get();
+            if (info != null && !info.restoredFromSnapshot) {
+                return CompletableFuture.completedFuture(info);
+            }
+            CompletableFuture<HandshakeInfo> inProgress = handshakeInProgress.get();
+            if (inProgress != null) {
+                return inProgress;
+            }
+            CompletableFuture<HandshakeInfo> future = new CompletableFuture<>();
+            if (handshakeInProgress.compareAndSet(null, future)) {
+                Thread thread = new Thread(() -> doHandshake(future), "supertokens-handshake");
+                thread.setDaemon(true);
+                thread.start();
+                return future;
+            }
+        }
+    }
+
+    private static void doHandshake(CompletableFuture<HandshakeInfo> future) {
+        try {
+            HandshakeInfo current = instance.get();
+            if (current != null && current.restoredFromSnapshot) {
+                Querier.getInstance().revalidateAPIVersion();
+            }
+            JsonObject response = Querier.getInstance().sendPostRequest("handshake", "/handshake", new JsonObject());
+            HandshakeInfo info = fromHandshakeResponse(response, false);
+            // a reset while this was in flight means the result belongs to an old configuration
+            while (handshakeInProgress.get() == future) {
+                current = instance.get();
+                if (current != null && !current.restoredFromSnapshot) {
+                    break;
                 }
+                if (instance.compareAndSet(current, info)) {
+                    lastFailure = null;
+                    SigningKeyRefresher.schedule(info.jwtSigningPublicKeyExpiryTime);
+                    HandshakeSnapshot.save(info);
+                    break;
+                }
+            }
+            current = instance.get();
+            future.complete(current == null ? info : current);
+        } catch (Exception e) {
+            if (handshakeInProgress.get() == future) {
+                lastFailure = new FailedHandshake(e, System.currentTimeMillis());
             }
+            future.completeExceptionally(e);
+        } finally {
+            handshakeInProgress.compareAndSet(future, null);
         }
-        return HandshakeInfo.instance;
+    }
+
+    static HandshakeInfo fromHandshakeResponse(JsonObject response, boolean restoredFromSnapshot) {
+        String jwtSigningPublicKey = response.get("jwtSigningPublicKey").getAsString();
+        long jwtSigningPublicKeyExpiryTime = response.get("jwtSigningPublicKeyExpiryTime").getAsLong();
+        return new HandshakeInfo(
+                jwtSigningPublicKey,
+                response.has("cookieDomain") ? response.get("cookieDomain").getAsString(): null,
+                response.get("cookieSecure").getAsBoolean(),
+                response.get("accessTokenPath").getAsString(),
+                response.get("refreshTokenPath").getAsString(),
+                response.get("enableAntiCsrf").getAsBoolean(),
+                response.get("accessTokenBlacklistingEnabled").getAsBoolean(),
+                jwtSigningPublicKeyExpiryTime,
+                response.get("cookieSameSite").getAsString(),
+                response.get("idRefreshTokenPath").getAsString(),
+                response.get("sessionExpiredStatusCode").getAsInt(),
+                getJwtSigningPublicKeys(response, jwtSigningPublicKey, jwtSigningPublicKeyExpiryTime),
+                restoredFromSnapshot);
+    }
+
+    // the /handshake response only has the current key, a snapshot also has the older ones that are still valid
+    private static List<JwtSigningKey> getJwtSigningPublicKeys(JsonObject response, String jwtSigningPublicKey,
+                                                               long jwtSigningPublicKeyExpiryTime) {
+        List<JwtSigningKey> keys = new ArrayList<>();
+        keys.add(new JwtSigningKey(jwtSigningPublicKey, jwtSigningPublicKeyExpiryTime));
+        if (response.has(SNAPSHOT_KEYS_MEMBER)) {
+            long now = System.currentTimeMillis();
+            for (JsonElement element : response.getAsJsonArray(SNAPSHOT_KEYS_MEMBER)) {
+                JsonObject key = element.getAsJsonObject();
+                String publicKey = key.get("publicKey").getAsString();
+                long expiryTime = key.get("expiryTime").getAsLong();
+                if (keys.size() < MAX_JWT_SIGNING_KEYS && !publicKey.equals(jwtSigningPublicKey) && expiryTime > now) {
+                    keys.add(new JwtSigningKey(publicKey, expiryTime));
+                }
+            }
+        }
+        return Collections.unmodifiableList(keys);
+    }
+
+    // the same shape as the /handshake response, plus the older signing keys, so that fromHandshakeResponse can read
+    // it back
+    JsonObject toJson() {
+        JsonObject result = new JsonObject();
+        result.addProperty("jwtSigningPublicKey", this.jwtSigningPublicKey);
+        JsonArray keys = new JsonArray();
+        for (JwtSigningKey key : this.jwtSigningPublicKeys) {
+            JsonObject keyJson = new JsonObject();
+            keyJson.addProperty("publicKey", key.publicKey);
+            keyJson.addProperty("expiryTime", key.expiryTime);
+            keys.add(keyJson);
+        }
+        result.add(SNAPSHOT_KEYS_MEMBER, keys);
+        if (this.cookieDomain != null) {
+            result.addProperty("cookieDomain", this.cookieDomain);
+        }
+        result.addProperty("cookieSecure", this.cookieSecure);
+        result.addProperty("accessTokenPath", this.accessTokenPath);
+        result.addProperty("refreshTokenPath", this.refreshTokenPath);
+        result.addProperty("enableAntiCsrf", this.enableAntiCsrf);
+        result.addProperty("accessTokenBlacklistingEnabled", this.accessTokenBlacklistingEnabled);
+        result.addProperty("jwtSigningPublicKeyExpiryTime", this.jwtSigningPublicKeyExpiryTime);
+        result.addProperty("cookieSameSite", this.cookieSameSite);
+        result.addProperty("idRefreshTokenPath", this.idRefreshTokenPath);
+        result.addProperty("sessionExpiredStatusCode", this.sessionExpiredStatusCode);
+        return result;
     }
 
     private HandshakeInfo(
@@ -78,7 +324,9 @@ public class HandshakeInfo {
             long jwtSigningPublicKeyExpiryTime,
             String cookieSameSite,
             String idRefreshTokenPath,
-            int sessionExpiredStatusCode
+            int sessionExpiredStatusCode,
+            List<JwtSigningKey> jwtSigningPublicKeys,
+            boolean restoredFromSnapshot
     ) {
         this.jwtSigningPublicKey = jwtSigningPublicKey;
         this.cookieDomain = cookieDomain;
@@ -91,12 +339,71 @@ public class HandshakeInfo {
         this.cookieSameSite = cookieSameSite;
         this.idRefreshTokenPath = idRefreshTokenPath;
         this.sessionExpiredStatusCode = sessionExpiredStatusCode;
+        this.jwtSigningPublicKeys = jwtSigningPublicKeys;
+        this.restoredFromSnapshot = restoredFromSnapshot;
     }
 
+    public List<JwtSigningKey> getJwtSigningPublicKeys() {
+        return this.jwtSigningPublicKeys;
+    }
+
+    /*
+     * Publishes a new snapshot, derived from the current one (not necessarily this instance), with newKey as the most
+     * recent signing key. Callers need to call getInstance() again to see it.
+     */
     public void updateJwtSigningPublicKeyInfo(String newKey, long newExpiry) {
-        synchronized (HandshakeInfo.class) {
-            this.jwtSigningPublicKey = newKey;
-            this.jwtSigningPublicKeyExpiryTime = newExpiry;
+        while (true) {
+            HandshakeInfo current = instance.get();
+            if (current == null) {
+                return;
+            }
+            if (current.jwtSigningPublicKey.equals(newKey) && current.jwtSigningPublicKeyExpiryTime == newExpiry) {
+                return;
+            }
+            HandshakeInfo updated = current.withJwtSigningPublicKey(newKey, newExpiry);
+            if (instance.compareAndSet(current, updated)) {
+                if (!newKey.equals(current.jwtSigningPublicKey)) {
+                    List<String> publicKeys = new ArrayList<>();
+                    for (JwtSigningKey key : updated.jwtSigningPublicKeys) {
+                        publicKeys.add(key.publicKey);
+                    }
+                    Utils.retainPublicKeys(publicKeys);
+                    RejectedSignatureCache.clear();
+                    if (!updated.restoredFromSnapshot) {
+                        HandshakeSnapshot.save(updated);
+                    }
+                }
+                break;
+            }
+        }
+        SigningKeyRefresher.schedule(newExpiry);
+    }
+
+    private static class FailedHandshake {
+        final Exception exception;
+        final long time;
+
+        FailedHandshake(Exception exception, long time) {
+            this.exception = exception;
+            this.time = time;
         }
-    };
+    }
+
+    private HandshakeInfo withJwtSigningPublicKey(String newKey, long newExpiry) {
+        long now = System.currentTimeMillis();
+        List<JwtSigningKey> keys = new ArrayList<>();
+        keys.add(new JwtSigningKey(newKey, newExpiry));
+        for (JwtSigningKey key : this.jwtSigningPublicKeys) {
+            if (keys.size() == MAX_JWT_SIGNING_KEYS) {
+                break;
+            }
+            if (!key.publicKey.equals(newKey) && key.expiryTime > now) {
+                keys.add(key);
+            }
+        }
+        return new HandshakeInfo(newKey, this.cookieDomain, this.cookieSecure, this.accessTokenPath,
+                this.refreshTokenPath, this.enableAntiCsrf, this.accessTokenBlacklistingEnabled, newExpiry,
+                this.cookieSameSite, this.idRefreshTokenPath, this.sessionExpiredStatusCode,
+                Collections.unmodifiableList(keys), this.restoredFromSnapshot);
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.supertokens.javalin.core;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.supertokens.javalin.core.querier.Querier;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/*
+ * Optional on disk copy of the negotiated CDI version and the handshake result, so that a restarting node can verify
+ * access tokens locally before it has talked to the core. A snapshot is only used if it was written for the same
+ * hosts and its signing key has not expired; it is then revalidated against the core in the background.
+ */
+class HandshakeSnapshot {
+
+    private static volatile Path file = null;
+
+    private HandshakeSnapshot() {}
+
+    static void setFile(@Nullable String path) {
+        file = path == null ? null : Paths.get(path).toAbsolutePath();
+    }
+
+    static void save(HandshakeInfo info) {
+        Path target = file;
+        if (target == null) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Querier querier = Querier.getInstance();
+            JsonObject snapshot = new JsonObject();
+            snapshot.addProperty("hosts", querier.getHosts());
+            snapshot.addProperty("apiVersion", querier.getAPIVersion());
+            snapshot.add("handshake", info.toJson());
+
+            Path directory = target.getParent();
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+            Files.write(temp, snapshot.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception ignored) {
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (Exception ignored) {}
+            }
+        }
+    }
+
+    static boolean restore() {
+        Path source = file;
+        if (source == null || !Querier.isInitialised() || !Files.exists(source)) {
+            return false;
+        }
+        try {
+            JsonObject snapshot = new JsonParser().parse(new String(Files.readAllBytes(source),
+                    StandardCharsets.UTF_8)).getAsJsonObject();
+            Querier querier = Querier.getInstance();
+            if (!snapshot.get("hosts").getAsString().equals(querier.getHosts())) {
+                return false;
+            }
+            HandshakeInfo info = HandshakeInfo.fromHandshakeResponse(snapshot.getAsJsonObject("handshake"), true);
+            if (info.jwtSigningPublicKeyExpiryTime <= System.currentTimeMillis()) {
+                return false;
+            }
+            querier.restoreAPIVersion(snapshot.get("apiVersion").getAsString());
+            return HandshakeInfo.restore(info);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * A read-only Map over a JsonObject that converts values only when they are read, with the values Gson would give:
+ * numbers as Double, objects as maps and arrays as lists. Nested objects and arrays are views as well, so nothing is
+ * copied up front. The JsonObject must not be changed while the view is in use.
+ */
+class JsonMapView extends AbstractMap<String, Object> {
+
+    final JsonObject json;
+
+    JsonMapView(JsonObject json) {
+        this.json = json;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        JsonElement value = this.json.get((String) key);
+        return value == null ? null : toObject(value);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && this.json.has((String) key);
+    }
+
+    @Override
+    public int size() {
+        return this.json.entrySet().size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                Iterator<Entry<String, JsonElement>> entries = JsonMapView.this.json.entrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        Entry<String, JsonElement> entry = entries.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(), toObject(entry.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return JsonMapView.this.size();
+            }
+        };
+    }
+
+    static Object toObject(JsonElement element) {
+        if (element.isJsonObject()) {
+            return new JsonMapView(element.getAsJsonObject());
+        }
+        if (element.isJsonArray()) {
+            return new ListView(element.getAsJsonArray());
+        }
+        if (element.isJsonNull()) {
+            return null;
+        }
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        }
+        if (primitive.isNumber()) {
+            return primitive.getAsDouble();
+        }
+        return primitive.getAsString();
+    }
+
+    private static class ListView extends AbstractList<Object> {
+
+        private final JsonArray json;
+
+        ListView(JsonArray json) {
+            this.json = json;
+        }
+
+        @Override
+        public Object get(int index) {
+            return toObject(this.json.get(index));
+        }
+
+        @Override
+        public int size() {
+            return this.json.size();
+        }
+    }
+}
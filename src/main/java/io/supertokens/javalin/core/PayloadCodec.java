@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core;
+
+import com.google.gson.JsonObject;
+
+/*
+ * Converts between a JWT payload or session data and an application class, registered with
+ * Config.withJwtPayloadType or Config.withSessionDataType. Typed calls with a class that was not registered use
+ * PayloadCodec.gson. Codecs are shared by every request, so they must be thread safe. decode must not change the
+ * JsonObject it is given, which may be shared with other sessions.
+ */
+public interface PayloadCodec<T> {
+
+    T decode(JsonObject json);
+
+    JsonObject encode(T value);
+
+    // binds the fields of type the way Gson does. The Gson type adapter is looked up once, not on every call
+    static <T> PayloadCodec<T> gson(Class<T> type) {
+        return new GsonPayloadCodec<>(type);
+    }
+}
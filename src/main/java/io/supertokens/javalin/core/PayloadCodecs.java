@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core;
+
+import com.google.gson.JsonObject;
+import io.supertokens.javalin.core.exception.GeneralException;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * The codec of each payload class, so that the reflective work of binding a class happens once and not on every
+ * request. JWT payloads and session data have separate registries, so a class can be bound differently as each.
+ * Classes that were not registered are bound with PayloadCodec.gson, whose codec is cached the same way.
+ */
+public class PayloadCodecs {
+
+    // sessions decode their JWT payload into the one class registered for it as soon as they are created
+    public static final PayloadCodecs JWT_PAYLOAD = new PayloadCodecs(true);
+
+    // session data is only decoded when it is read, into the class asked for, so any number can be registered
+    public static final PayloadCodecs SESSION_DATA = new PayloadCodecs(false);
+
+    private final boolean singleType;
+
+    private final Map<Class<?>, PayloadCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    // null until a class is registered, and always null without singleType
+    @Nullable
+    private volatile Class<?> registeredType = null;
+
+    private PayloadCodecs(boolean singleType) {
+        this.singleType = singleType;
+    }
+
+    @TestOnly
+    public static void reset() {
+        JWT_PAYLOAD.codecs.clear();
+        JWT_PAYLOAD.registeredType = null;
+        SESSION_DATA.codecs.clear();
+        SESSION_DATA.registeredType = null;
+    }
+
+    // with singleType, registering a class other than the one already registered is rejected
+    synchronized <T> void register(Class<T> type, PayloadCodec<T> codec) {
+        if (this.singleType) {
+            Class<?> registered = this.registeredType;
+            if (registered != null && registered != type) {
+                throw new IllegalArgumentException("JWT payload type " + registered.getName() +
+                        " is already registered, so " + type.getName() + " cannot be");
+            }
+            this.registeredType = type;
+        }
+        this.codecs.put(type, codec);
+    }
+
+    public boolean isRegistered(Class<?> type) {
+        return this.registeredType == type;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> PayloadCodec<T> get(Class<T> type) {
+        PayloadCodec<?> codec = this.codecs.get(type);
+        if (codec == null) {
+            codec = this.codecs.computeIfAbsent(type, PayloadCodec::gson);
+        }
+        return (PayloadCodec<T>) codec;
+    }
+
+    public <T> T decode(JsonObject json, Class<T> type) throws GeneralException {
+        try {
+            return get(type).decode(json);
+        } catch (RuntimeException e) {
+            throw new GeneralException(e);
+        }
+    }
+
+    // null when no class was registered
+    @Nullable
+    public Object decodeRegistered(JsonObject json) throws GeneralException {
+        Class<?> type = this.registeredType;
+        return type == null ? null : decode(json, type);
+    }
+
+    public <T> JsonObject encode(T value, Class<T> type) throws GeneralException {
+        try {
+            return get(type).encode(value);
+        } catch (RuntimeException e) {
+            throw new GeneralException(e);
+        }
+    }
+}
@@ -18,19 +18,27 @@ package io.supertokens.javalin.core;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
 import io.supertokens.javalin.ProcessState;
 import io.supertokens.javalin.core.accessToken.AccessToken;
+import io.supertokens.javalin.core.accessToken.PromotedRefreshTokenCache;
+import io.supertokens.javalin.core.accessToken.RejectedSignatureCache;
+import io.supertokens.javalin.core.accessToken.VerificationResult;
 import io.supertokens.javalin.core.exception.GeneralException;
 import io.supertokens.javalin.core.exception.TokenTheftDetectedException;
 import io.supertokens.javalin.core.exception.TryRefreshTokenException;
 import io.supertokens.javalin.core.exception.UnauthorisedException;
 import io.supertokens.javalin.core.informationHolders.SessionTokens;
+import io.supertokens.javalin.core.querier.HttpTransport;
+import io.supertokens.javalin.core.querier.LoadBalancer;
 import io.supertokens.javalin.core.querier.Querier;
+import io.supertokens.javalin.core.querier.RequestBody;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /*This can be moved to a separate package and be shared with other java webservers.*/
 
@@ -38,19 +46,65 @@ public class SessionFunctions {
 
     public static void config(String config, String apiKey) {
         Querier.initInstance(config, apiKey);
+        HandshakeSnapshot.restore();
+        HandshakeInfo.startHandshake();
+    }
+
+    public static void configHandshakeSnapshotFile(String path) {
+        HandshakeInfo.setSnapshotFile(path);
+    }
+
+    public static void configCoreConnections(int maxConnections, boolean http2, @Nullable Executor executor) {
+        HttpTransport.setMaxConnections(maxConnections);
+        HttpTransport.setHttp2(http2);
+        HttpTransport.setExecutor(executor);
+    }
+
+    public static void configLoadBalancer(@NotNull LoadBalancer loadBalancer) {
+        Querier.setLoadBalancer(loadBalancer);
+    }
+
+    public static void configHedging(double percentile, double maxHedgeRate) {
+        Querier.setHedging(percentile, maxHedgeRate);
+    }
+
+    public static <T> void configJwtPayloadType(@NotNull Class<T> type, @NotNull PayloadCodec<T> codec) {
+        PayloadCodecs.JWT_PAYLOAD.register(type, codec);
+    }
+
+    public static <T> void configSessionDataType(@NotNull Class<T> type, @NotNull PayloadCodec<T> codec) {
+        PayloadCodecs.SESSION_DATA.register(type, codec);
+    }
+
+    public static void configHandshakeTimeout(long timeout) {
+        HandshakeInfo.setHandshakeTimeout(timeout);
     }
 
     public static SessionTokens createNewSession(@NotNull String userId, @NotNull JsonObject jwtPayload,
                                                  @NotNull JsonObject sessionData) throws GeneralException {
-        JsonObject body = new JsonObject();
-        body.addProperty("userId", userId);
-        body.add("userDataInJWT", jwtPayload);
-        body.add("userDataInDatabase", sessionData);
-        JsonObject response = Querier.getInstance().sendPostRequest("newsession", "/session", body);
-        HandshakeInfo.getInstance().updateJwtSigningPublicKeyInfo(
-                response.get("jwtSigningPublicKey").getAsString(),
-                response.get("jwtSigningPublicKeyExpiryTime").getAsLong());
-        return Utils.parseJsonResponse(response);
+        SessionResponse response = Querier.getInstance().sendPostRequest("newsession", "/session",
+                getNewSessionBody(userId, jwtPayload, sessionData), SessionResponse.READER);
+        return onNewSessionResponse(response);
+    }
+
+    public static CompletableFuture<SessionTokens> createNewSessionAsync(@NotNull String userId,
+                                                                         @NotNull JsonObject jwtPayload,
+                                                                         @NotNull JsonObject sessionData) {
+        return Querier.getInstance().sendPostRequestAsync("newsession", "/session",
+                getNewSessionBody(userId, jwtPayload, sessionData), SessionResponse.READER)
+                .thenApply(Utils.unchecked(SessionFunctions::onNewSessionResponse));
+    }
+
+    private static RequestBody getNewSessionBody(String userId, JsonObject jwtPayload, JsonObject sessionData) {
+        return body -> body
+                .member("userId", userId)
+                .member("userDataInJWT", jwtPayload)
+                .member("userDataInDatabase", sessionData);
+    }
+
+    private static SessionTokens onNewSessionResponse(SessionResponse response) throws GeneralException {
+        updateJwtSigningPublicKeyInfo(response);
+        return response.toSessionTokens();
     }
 
     public static SessionTokens getSession(String accessToken, String antiCsrfToken, boolean doAntiCsrfCheck) throws
@@ -58,106 +112,210 @@ public class SessionFunctions {
 
         // try to verify within SDK
         HandshakeInfo handshakeInfo = HandshakeInfo.getInstance();
-        try {
-            if (handshakeInfo.jwtSigningPublicKeyExpiryTime > System.currentTimeMillis()) {
-                AccessToken.AccessTokenInfo accessTokenInfo = AccessToken.getInfoFromAccessToken(accessToken, handshakeInfo.jwtSigningPublicKey,
-                            handshakeInfo.enableAntiCsrf && doAntiCsrfCheck);
-                if (
-                        handshakeInfo.enableAntiCsrf &&
-                                doAntiCsrfCheck &&
-                                (antiCsrfToken == null || !antiCsrfToken.equals(accessTokenInfo.antiCsrfToken))
-                ) {
-                    if (antiCsrfToken == null) {
-                        throw new TryRefreshTokenException("provided antiCsrfToken is null. If you do not want anti-csrf check for this API, please set doAntiCsrfCheck to true");
-                    } else {
-                        throw new TryRefreshTokenException("anti-csrf check failed");
-                    }
-                }
-                if (!handshakeInfo.accessTokenBlacklistingEnabled && accessTokenInfo.parentRefreshTokenHash1 == null) {
-                    return new SessionTokens(accessTokenInfo.sessionHandle, accessTokenInfo.userId,
-                            accessTokenInfo.userData, null, null, null, null);
-                }
-            }
-        } catch (TryRefreshTokenException ignored) {}
+        VerificationResult result = verifyLocally(handshakeInfo, accessToken, antiCsrfToken, doAntiCsrfCheck);
+        SessionTokens localSession = getLocalSession(handshakeInfo, result);
+        if (localSession != null) {
+            return localSession;
+        }
 
         ProcessState.getInstance().addState(ProcessState.PROCESS_STATE.CALLING_SERVICE_IN_VERIFY, null);
 
         // send request below.
 
-        JsonObject body = new JsonObject();
-        body.addProperty("accessToken", accessToken);
-        body.addProperty("doAntiCsrfCheck", doAntiCsrfCheck);
-        if (antiCsrfToken != null) {
-            body.addProperty("antiCsrfToken", antiCsrfToken);
+        SessionResponse response = Querier.getInstance().sendPostRequest("getsession" ,"/session/verify",
+                getSessionBody(accessToken, antiCsrfToken, doAntiCsrfCheck), SessionResponse.READER);
+        return onGetSessionResponse(response, accessToken, result);
+    }
+
+    /*
+     * Completes right away when the access token can be decided locally, so only a call to the core is waited on.
+     */
+    public static CompletableFuture<SessionTokens> getSessionAsync(String accessToken, String antiCsrfToken,
+                                                                   boolean doAntiCsrfCheck) {
+        return HandshakeInfo.getInstanceAsync().thenCompose(handshakeInfo -> {
+            VerificationResult result;
+            SessionTokens localSession;
+            try {
+                result = verifyLocally(handshakeInfo, accessToken, antiCsrfToken, doAntiCsrfCheck);
+                localSession = getLocalSession(handshakeInfo, result);
+            } catch (TryRefreshTokenException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            if (localSession != null) {
+                return CompletableFuture.completedFuture(localSession);
+            }
+
+            ProcessState.getInstance().addState(ProcessState.PROCESS_STATE.CALLING_SERVICE_IN_VERIFY, null);
+
+            return Querier.getInstance().sendPostRequestAsync("getsession", "/session/verify",
+                    getSessionBody(accessToken, antiCsrfToken, doAntiCsrfCheck), SessionResponse.READER)
+                    .thenApply(Utils.unchecked(response -> onGetSessionResponse(response, accessToken, result)));
+        });
+    }
+
+    private static VerificationResult verifyLocally(HandshakeInfo handshakeInfo, String accessToken,
+                                                    String antiCsrfToken, boolean doAntiCsrfCheck)
+            throws TryRefreshTokenException {
+        VerificationResult result = AccessToken.verifyLocally(accessToken, handshakeInfo.getJwtSigningPublicKeys(),
+                handshakeInfo.enableAntiCsrf && doAntiCsrfCheck);
+        if (result.status == VerificationResult.Status.TRY_REFRESH) {
+            throw new TryRefreshTokenException(result.message);
         }
-        JsonObject response = Querier.getInstance().sendPostRequest("getsession" ,"/session/verify", body);
-        if (response.get("status").getAsString().equals("OK")) {
-            return Utils.parseJsonResponse(response);
-        } else if (response.get("status").getAsString().equals("UNAUTHORISED")) {
-            throw new UnauthorisedException(response.get("message").getAsString());
+        if (result.status == VerificationResult.Status.VERIFIED) {
+            AccessToken.AccessTokenInfo accessTokenInfo = result.info;
+            assert accessTokenInfo != null;
+            if (
+                    handshakeInfo.enableAntiCsrf &&
+                            doAntiCsrfCheck &&
+                            (antiCsrfToken == null || !antiCsrfToken.equals(accessTokenInfo.antiCsrfToken))
+            ) {
+                if (antiCsrfToken == null) {
+                    throw new TryRefreshTokenException("provided antiCsrfToken is null. If you do not want anti-csrf check for this API, please set doAntiCsrfCheck to true");
+                } else {
+                    throw new TryRefreshTokenException("anti-csrf check failed");
+                }
+            }
+        }
+        return result;
+    }
+
+    // null if the core has to be asked
+    @Nullable
+    private static SessionTokens getLocalSession(HandshakeInfo handshakeInfo, VerificationResult result) {
+        AccessToken.AccessTokenInfo accessTokenInfo = result.info;
+        if (result.status == VerificationResult.Status.VERIFIED && !handshakeInfo.accessTokenBlacklistingEnabled
+                && (accessTokenInfo.parentRefreshTokenHash1 == null
+                || PromotedRefreshTokenCache.contains(accessTokenInfo.refreshTokenHash1))) {
+            return new SessionTokens(accessTokenInfo.sessionHandle, accessTokenInfo.userId,
+                    accessTokenInfo.getUserData(), null, null, null, null);
+        }
+        return null;
+    }
+
+    private static RequestBody getSessionBody(String accessToken, String antiCsrfToken, boolean doAntiCsrfCheck) {
+        return body -> {
+            body.member("accessToken", accessToken).member("doAntiCsrfCheck", doAntiCsrfCheck);
+            if (antiCsrfToken != null) {
+                body.member("antiCsrfToken", antiCsrfToken);
+            }
+        };
+    }
+
+    private static SessionTokens onGetSessionResponse(SessionResponse response, String accessToken,
+                                                      VerificationResult result)
+            throws UnauthorisedException, TryRefreshTokenException, GeneralException {
+        AccessToken.AccessTokenInfo accessTokenInfo = result.info;
+        if (response.isOK()) {
+            updateJwtSigningPublicKeyInfo(response);
+            // its signature may have been rejected locally only because its key was not known yet
+            RejectedSignatureCache.remove(accessToken);
+            if (accessTokenInfo != null && accessTokenInfo.parentRefreshTokenHash1 != null) {
+                PromotedRefreshTokenCache.add(accessTokenInfo.refreshTokenHash1, accessTokenInfo.expiryTime);
+            }
+            return response.toSessionTokens();
+        } else if (response.isUnauthorised()) {
+            throw new UnauthorisedException(response.message);
         } else {
-            throw new TryRefreshTokenException(response.get("message").getAsString());
+            result.onRejectedByCore(accessToken);
+            throw new TryRefreshTokenException(response.message);
         }
     }
 
     public static SessionTokens refreshSession(String refreshToken, @Nullable  String antiCsrfToken) throws UnauthorisedException,
             TokenTheftDetectedException, GeneralException {
-        JsonObject body = new JsonObject();
-        body.addProperty("refreshToken", refreshToken);
-        if (antiCsrfToken != null) {
-            body.addProperty("antiCsrfToken", antiCsrfToken);
-        }
-        JsonObject response = Querier.getInstance().sendPostRequest("refresh", "/session/refresh", body);
-        if (response.get("status").getAsString().equals("OK")) {
-            return Utils.parseJsonResponse(response);
-        } else if (response.get("status").getAsString().equals("UNAUTHORISED")) {
-            throw new UnauthorisedException(response.get("message").getAsString());
+        SessionResponse response = Querier.getInstance().sendPostRequest("refresh", "/session/refresh",
+                getRefreshSessionBody(refreshToken, antiCsrfToken), SessionResponse.READER);
+        return onRefreshSessionResponse(response);
+    }
+
+    public static CompletableFuture<SessionTokens> refreshSessionAsync(String refreshToken,
+                                                                       @Nullable String antiCsrfToken) {
+        return Querier.getInstance().sendPostRequestAsync("refresh", "/session/refresh",
+                getRefreshSessionBody(refreshToken, antiCsrfToken), SessionResponse.READER)
+                .thenApply(Utils.unchecked(SessionFunctions::onRefreshSessionResponse));
+    }
+
+    private static RequestBody getRefreshSessionBody(String refreshToken, @Nullable String antiCsrfToken) {
+        return body -> {
+            body.member("refreshToken", refreshToken);
+            if (antiCsrfToken != null) {
+                body.member("antiCsrfToken", antiCsrfToken);
+            }
+        };
+    }
+
+    private static SessionTokens onRefreshSessionResponse(SessionResponse response) throws UnauthorisedException,
+            TokenTheftDetectedException, GeneralException {
+        if (response.isOK()) {
+            updateJwtSigningPublicKeyInfo(response);
+            return response.toSessionTokens();
+        } else if (response.isUnauthorised()) {
+            throw new UnauthorisedException(response.message);
         } else {
-            throw new TokenTheftDetectedException(
-                    response.get("session").getAsJsonObject().get("handle").getAsString(),
-                    response.get("session").getAsJsonObject().get("userId").getAsString());
+            throw new TokenTheftDetectedException(response.handle, response.userId);
         }
     }
 
     public static String[] revokeAllSessionsForUser(@NotNull String userId) throws GeneralException {
-        JsonObject body = new JsonObject();
-        body.addProperty("userId", userId);
-        JsonObject response = Querier.getInstance().sendPostRequest("revokeallsession", "/session/remove", body);
-        JsonArray jsonArray = response.get("sessionHandlesRevoked").getAsJsonArray();
+        JsonObject response = Querier.getInstance().sendPostRequest("revokeallsession", "/session/remove",
+                getRevokeAllSessionsBody(userId));
+        return getStringArray(response, "sessionHandlesRevoked");
+    }
 
-        String[] result = new String[jsonArray.size()];
-        for (int i = 0; i < jsonArray.size(); i++) {
-            result[i] = jsonArray.get(i).getAsString();
-        }
-        return result;
+    public static CompletableFuture<String[]> revokeAllSessionsForUserAsync(@NotNull String userId) {
+        return Querier.getInstance().<JsonObject>sendPostRequestAsync("revokeallsession", "/session/remove",
+                getRevokeAllSessionsBody(userId))
+                .thenApply(response -> getStringArray(response, "sessionHandlesRevoked"));
+    }
+
+    private static RequestBody getRevokeAllSessionsBody(String userId) {
+        return body -> body.member("userId", userId);
     }
 
     public static String[] getAllSessionHandlesForUser(@NotNull String userId) throws GeneralException {
+        JsonObject response = Querier.getInstance().sendGetRequest("getallsession", "/session/user",
+                getUserIdParams(userId));
+        return getStringArray(response, "sessionHandles");
+    }
+
+    public static CompletableFuture<String[]> getAllSessionHandlesForUserAsync(@NotNull String userId) {
+        return Querier.getInstance().<JsonObject>sendGetRequestAsync("getallsession", "/session/user",
+                getUserIdParams(userId))
+                .thenApply(response -> getStringArray(response, "sessionHandles"));
+    }
+
+    private static HashMap<String, String> getUserIdParams(String userId) {
         HashMap<String, String> params = new HashMap<>();
         params.put("userId", userId);
-        JsonObject response = Querier.getInstance().sendGetRequest("getallsession", "/session/user", params);
-        JsonArray jsonArray = response.get("sessionHandles").getAsJsonArray();
-
-        String[] result = new String[jsonArray.size()];
-        for (int i = 0; i < jsonArray.size(); i++) {
-            result[i] = jsonArray.get(i).getAsString();
-        }
-        return result;
+        return params;
     }
 
     public static boolean revokeSession(@NotNull String sessionHandle) throws GeneralException {
         return revokeMultipleSessions(new String[]{sessionHandle}).length == 1;
     }
 
+    public static CompletableFuture<Boolean> revokeSessionAsync(@NotNull String sessionHandle) {
+        return revokeMultipleSessionsAsync(new String[]{sessionHandle}).thenApply(revoked -> revoked.length == 1);
+    }
+
     public static String[] revokeMultipleSessions(@NotNull String[] sessionHandles) throws GeneralException {
-        JsonArray sessionHandleJson = new JsonArray();
-        for (String handle : sessionHandles) {
-            sessionHandleJson.add(new JsonPrimitive(handle));
-        }
-        JsonObject body = new JsonObject();
-        body.add("sessionHandles", sessionHandleJson);
-        JsonObject response = Querier.getInstance().sendPostRequest("revokeMany", "/session/remove", body);
-        JsonArray jsonArray = response.get("sessionHandlesRevoked").getAsJsonArray();
+        JsonObject response = Querier.getInstance().sendPostRequest("revokeMany", "/session/remove",
+                getRevokeMultipleSessionsBody(sessionHandles));
+        return getStringArray(response, "sessionHandlesRevoked");
+    }
+
+    public static CompletableFuture<String[]> revokeMultipleSessionsAsync(@NotNull String[] sessionHandles) {
+        return Querier.getInstance().<JsonObject>sendPostRequestAsync("revokeMany", "/session/remove",
+                getRevokeMultipleSessionsBody(sessionHandles))
+                .thenApply(response -> getStringArray(response, "sessionHandlesRevoked"));
+    }
+
+    private static RequestBody getRevokeMultipleSessionsBody(String[] sessionHandles) {
+        return body -> body.member("sessionHandles", sessionHandles);
+    }
+
+    private static String[] getStringArray(JsonObject response, String key) {
+        JsonArray jsonArray = response.get(key).getAsJsonArray();
 
         String[] result = new String[jsonArray.size()];
         for (int i = 0; i < jsonArray.size(); i++) {
@@ -167,56 +325,111 @@ public class SessionFunctions {
     }
 
     public static JsonObject getSessionData(@NotNull String sessionHandle) throws GeneralException, UnauthorisedException {
-        HashMap<String, String> params = new HashMap<>();
-        params.put("sessionHandle", sessionHandle);
-        JsonObject response = Querier.getInstance().sendGetRequest("getsessiondata", "/session/data", params);
-        if (response.get("status").getAsString().equals("OK")) {
-            return response.get("userDataInDatabase").getAsJsonObject();
-        } else {
-            throw new UnauthorisedException(response.get("message").getAsString());
-        }
+        JsonObject response = Querier.getInstance().sendGetRequest("getsessiondata", "/session/data",
+                getSessionHandleParams(sessionHandle));
+        return getUserData(response, "userDataInDatabase");
+    }
+
+    public static CompletableFuture<JsonObject> getSessionDataAsync(@NotNull String sessionHandle) {
+        return Querier.getInstance().<JsonObject>sendGetRequestAsync("getsessiondata", "/session/data",
+                getSessionHandleParams(sessionHandle))
+                .thenApply(Utils.unchecked(response -> getUserData(response, "userDataInDatabase")));
     }
 
     public static void updateSessionData(@NotNull String sessionHandle, @NotNull JsonObject newSessionData) throws GeneralException, UnauthorisedException {
-        JsonObject body = new JsonObject();
-        body.addProperty("sessionHandle", sessionHandle);
-        body.add("userDataInDatabase", newSessionData);
-        JsonObject response = Querier.getInstance().sendPutRequest("updatesessiondata", "/session/data", body);
-        if (response.get("status").getAsString().equals("UNAUTHORISED")) {
-            throw new UnauthorisedException(response.get("message").getAsString());
-        }
+        JsonObject response = Querier.getInstance().sendPutRequest("updatesessiondata", "/session/data",
+                getUpdateUserDataBody(sessionHandle, "userDataInDatabase", newSessionData));
+        checkUpdateUserDataResponse(response);
+    }
+
+    public static CompletableFuture<Void> updateSessionDataAsync(@NotNull String sessionHandle,
+                                                                 @NotNull JsonObject newSessionData) {
+        return Querier.getInstance().<JsonObject>sendPutRequestAsync("updatesessiondata", "/session/data",
+                getUpdateUserDataBody(sessionHandle, "userDataInDatabase", newSessionData))
+                .thenApply(Utils.unchecked(SessionFunctions::checkUpdateUserDataResponse));
     }
 
     public static JsonObject getJWTPayload(@NotNull String sessionHandle) throws GeneralException, UnauthorisedException {
+        JsonObject response = Querier.getInstance().sendGetRequest("getjwtpayload", "/jwt/data",
+                getSessionHandleParams(sessionHandle));
+        return getUserData(response, "userDataInJWT");
+    }
+
+    public static CompletableFuture<JsonObject> getJWTPayloadAsync(@NotNull String sessionHandle) {
+        return Querier.getInstance().<JsonObject>sendGetRequestAsync("getjwtpayload", "/jwt/data",
+                getSessionHandleParams(sessionHandle))
+                .thenApply(Utils.unchecked(response -> getUserData(response, "userDataInJWT")));
+    }
+
+    public static void updateJWTPayload(@NotNull String sessionHandle, @NotNull JsonObject newJWTPayload) throws GeneralException, UnauthorisedException {
+        JsonObject response = Querier.getInstance().sendPutRequest("updatejwtpayload", "/jwt/data",
+                getUpdateUserDataBody(sessionHandle, "userDataInJWT", newJWTPayload));
+        checkUpdateUserDataResponse(response);
+    }
+
+    public static CompletableFuture<Void> updateJWTPayloadAsync(@NotNull String sessionHandle,
+                                                                @NotNull JsonObject newJWTPayload) {
+        return Querier.getInstance().<JsonObject>sendPutRequestAsync("updatejwtpayload", "/jwt/data",
+                getUpdateUserDataBody(sessionHandle, "userDataInJWT", newJWTPayload))
+                .thenApply(Utils.unchecked(SessionFunctions::checkUpdateUserDataResponse));
+    }
+
+    private static HashMap<String, String> getSessionHandleParams(String sessionHandle) {
         HashMap<String, String> params = new HashMap<>();
         params.put("sessionHandle", sessionHandle);
-        JsonObject response = Querier.getInstance().sendGetRequest("getjwtpayload", "/jwt/data", params);
+        return params;
+    }
+
+    private static JsonObject getUserData(JsonObject response, String key) throws UnauthorisedException {
         if (response.get("status").getAsString().equals("OK")) {
-            return response.get("userDataInJWT").getAsJsonObject();
+            return response.get(key).getAsJsonObject();
         } else {
             throw new UnauthorisedException(response.get("message").getAsString());
         }
     }
 
-    public static void updateJWTPayload(@NotNull String sessionHandle, @NotNull JsonObject newJWTPayload) throws GeneralException, UnauthorisedException {
-        JsonObject body = new JsonObject();
-        body.addProperty("sessionHandle", sessionHandle);
-        body.add("userDataInJWT", newJWTPayload);
-        JsonObject response = Querier.getInstance().sendPutRequest("updatejwtpayload", "/jwt/data", body);
+    private static RequestBody getUpdateUserDataBody(String sessionHandle, String key, JsonObject userData) {
+        return body -> body.member("sessionHandle", sessionHandle).member(key, userData);
+    }
+
+    private static Void checkUpdateUserDataResponse(JsonObject response) throws UnauthorisedException {
         if (response.get("status").getAsString().equals("UNAUTHORISED")) {
             throw new UnauthorisedException(response.get("message").getAsString());
         }
+        return null;
     }
 
     public static SessionTokens regenerateSession(String accessToken, JsonObject newJWTPayload) throws GeneralException, UnauthorisedException {
-        JsonObject body = new JsonObject();
-        body.addProperty("accessToken", accessToken);
-        body.add("userDataInJWT", newJWTPayload);
-        JsonObject response = Querier.getInstance().sendPostRequest("regeneratesession", "/session/regenerate", body);
-        if (response.get("status").getAsString().equals("UNAUTHORISED")) {
-            throw new UnauthorisedException(response.get("message").getAsString());
+        SessionResponse response = Querier.getInstance().sendPostRequest("regeneratesession", "/session/regenerate",
+                getRegenerateSessionBody(accessToken, newJWTPayload), SessionResponse.READER);
+        return onRegenerateSessionResponse(response);
+    }
+
+    public static CompletableFuture<SessionTokens> regenerateSessionAsync(String accessToken,
+                                                                          JsonObject newJWTPayload) {
+        return Querier.getInstance().sendPostRequestAsync("regeneratesession", "/session/regenerate",
+                getRegenerateSessionBody(accessToken, newJWTPayload), SessionResponse.READER)
+                .thenApply(Utils.unchecked(SessionFunctions::onRegenerateSessionResponse));
+    }
+
+    private static RequestBody getRegenerateSessionBody(String accessToken, JsonObject newJWTPayload) {
+        return body -> body.member("accessToken", accessToken).member("userDataInJWT", newJWTPayload);
+    }
+
+    private static SessionTokens onRegenerateSessionResponse(SessionResponse response) throws GeneralException,
+            UnauthorisedException {
+        if (response.isUnauthorised()) {
+            throw new UnauthorisedException(response.message);
         } else {
-            return Utils.parseJsonResponse(response);
+            updateJwtSigningPublicKeyInfo(response);
+            return response.toSessionTokens();
+        }
+    }
+
+    private static void updateJwtSigningPublicKeyInfo(SessionResponse response) throws GeneralException {
+        if (response.jwtSigningPublicKey != null && response.jwtSigningPublicKeyExpiryTime != null) {
+            HandshakeInfo.getInstance().updateJwtSigningPublicKeyInfo(response.jwtSigningPublicKey,
+                    response.jwtSigningPublicKeyExpiryTime);
         }
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.supertokens.javalin.core.exception.GeneralException;
+import io.supertokens.javalin.core.informationHolders.SessionTokens;
+import io.supertokens.javalin.core.informationHolders.TokenInfo;
+import io.supertokens.javalin.core.querier.ResponseReader;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/*
+ * The response of /session, /session/verify, /session/refresh and /session/regenerate, read in a single pass over the
+ * response bytes. Only userDataInJWT is built as a JsonObject, which is what Session exposes the JWT payload from.
+ */
+class SessionResponse {
+
+    static final ResponseReader<SessionResponse> READER = new ResponseReader<>() {
+        @Override
+        public SessionResponse read(JsonReader reader) throws IOException {
+            return SessionResponse.read(reader);
+        }
+
+        // userDataInJWT is the only mutable part, so that is what every other caller gets a copy of
+        @Override
+        public Supplier<SessionResponse> share(SessionResponse response) {
+            if (response.userDataInJWT == null) {
+                return () -> response;
+            }
+            String userDataInJWT = response.userDataInJWT.toString();
+            return () -> response.withUserDataInJWT(new JsonParser().parse(userDataInJWT).getAsJsonObject());
+        }
+    };
+
+    final String status;
+    @Nullable
+    final String message;
+    @Nullable
+    final String handle;
+    @Nullable
+    final String userId;
+    @Nullable
+    final JsonObject userDataInJWT;
+    @Nullable
+    final TokenInfo accessToken;
+    @Nullable
+    final TokenInfo refreshToken;
+    @Nullable
+    final TokenInfo idRefreshToken;
+    @Nullable
+    final String antiCsrfToken;
+    @Nullable
+    final String jwtSigningPublicKey;
+    @Nullable
+    final Long jwtSigningPublicKeyExpiryTime;
+
+    private SessionResponse(String status, @Nullable String message, @Nullable String handle, @Nullable String userId,
+                            @Nullable JsonObject userDataInJWT, @Nullable TokenInfo accessToken,
+                            @Nullable TokenInfo refreshToken, @Nullable TokenInfo idRefreshToken,
+                            @Nullable String antiCsrfToken, @Nullable String jwtSigningPublicKey,
+                            @Nullable Long jwtSigningPublicKeyExpiryTime) {
+        this.status = status;
+        this.message = message;
+        this.handle = handle;
+        this.userId = userId;
+        this.userDataInJWT = userDataInJWT;
+        this.accessToken = accessToken;
+        this.refreshToken = refreshToken;
+        this.idRefreshToken = idRefreshToken;
+        this.antiCsrfToken = antiCsrfToken;
+        this.jwtSigningPublicKey = jwtSigningPublicKey;
+        this.jwtSigningPublicKeyExpiryTime = jwtSigningPublicKeyExpiryTime;
+    }
+
+    private SessionResponse withUserDataInJWT(JsonObject userDataInJWT) {
+        return new SessionResponse(this.status, this.message, this.handle, this.userId, userDataInJWT,
+                this.accessToken, this.refreshToken, this.idRefreshToken, this.antiCsrfToken,
+                this.jwtSigningPublicKey, this.jwtSigningPublicKeyExpiryTime);
+    }
+
+    boolean isOK() {
+        return "OK".equals(this.status);
+    }
+
+    boolean isUnauthorised() {
+        return "UNAUTHORISED".equals(this.status);
+    }
+
+    SessionTokens toSessionTokens() throws GeneralException {
+        if (this.handle == null || this.userId == null) {
+            throw new GeneralException("session missing in the response of the SuperTokens core");
+        }
+        return new SessionTokens(this.handle, this.userId, this.userDataInJWT, this.accessToken, this.refreshToken,
+                this.idRefreshToken, this.antiCsrfToken);
+    }
+
+    private static SessionResponse read(JsonReader reader) throws IOException {
+        String status = null;
+        String message = null;
+        String handle = null;
+        String userId = null;
+        JsonObject userDataInJWT = null;
+        TokenInfo accessToken = null;
+        TokenInfo refreshToken = null;
+        TokenInfo idRefreshToken = null;
+        String antiCsrfToken = null;
+        String jwtSigningPublicKey = null;
+        Long jwtSigningPublicKeyExpiryTime = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "status":
+                    status = reader.nextString();
+                    break;
+                case "message":
+                    message = reader.nextString();
+                    break;
+                case "session":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String sessionName = reader.nextName();
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            continue;
+                        }
+                        switch (sessionName) {
+                            case "handle":
+                                handle = reader.nextString();
+                                break;
+                            case "userId":
+                                userId = reader.nextString();
+                                break;
+                            case "userDataInJWT":
+                                userDataInJWT = new JsonParser().parse(reader).getAsJsonObject();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "accessToken":
+                    accessToken = readTokenInfo(reader);
+                    break;
+                case "refreshToken":
+                    refreshToken = readTokenInfo(reader);
+                    break;
+                case "idRefreshToken":
+                    idRefreshToken = readTokenInfo(reader);
+                    break;
+                case "antiCsrfToken":
+                    antiCsrfToken = reader.nextString();
+                    break;
+                case "jwtSigningPublicKey":
+                    jwtSigningPublicKey = reader.nextString();
+                    break;
+                case "jwtSigningPublicKeyExpiryTime":
+                    jwtSigningPublicKeyExpiryTime = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (status == null) {
+            throw new IOException("status missing in the response of the SuperTokens core");
+        }
+        return new SessionResponse(status, message, handle, userId, userDataInJWT, accessToken, refreshToken,
+                idRefreshToken, antiCsrfToken, jwtSigningPublicKey, jwtSigningPublicKeyExpiryTime);
+    }
+
+    private static TokenInfo readTokenInfo(JsonReader reader) throws IOException {
+        String token = null;
+        Long expiry = null;
+        Long createdTime = null;
+        String cookiePath = null;
+        Boolean cookieSecure = null;
+        String domain = null;
+        String sameSite = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "token":
+                    token = reader.nextString();
+                    break;
+                case "expiry":
+                    expiry = reader.nextLong();
+                    break;
+                case "createdTime":
+                    createdTime = reader.nextLong();
+                    break;
+                case "cookiePath":
+                    cookiePath = reader.nextString();
+                    break;
+                case "cookieSecure":
+                    cookieSecure = reader.nextBoolean();
+                    break;
+                case "domain":
+                    domain = reader.nextString();
+                    break;
+                case "sameSite":
+                    sameSite = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (token == null || expiry == null || createdTime == null || cookiePath == null || cookieSecure == null
+                || sameSite == null) {
+            throw new IOException("Token in the response of the SuperTokens core does not contain all the information");
+        }
+        return new TokenInfo(token, expiry, createdTime, cookiePath, cookieSecure, domain, sameSite);
+    }
+}
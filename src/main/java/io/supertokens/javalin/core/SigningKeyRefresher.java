@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.supertokens.javalin.core;
+
+import com.google.gson.JsonObject;
+import io.supertokens.javalin.core.querier.Querier;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Re-runs /handshake around jwtSigningPublicKeyExpiryTime so that local verification does not lapse until some
+ * createNewSession happens to bring in the new key. The core only rotates its key once the current one expires, so an
+ * earlier call could only return the same key: the first attempt is made at expiry, and repeated every
+ * RETRY_INTERVAL until the core returns a new key.
+ */
+class SigningKeyRefresher {
+
+    private static final long RETRY_INTERVAL = 5000;
+
+    private static ScheduledExecutorService executor = null;
+
+    private static ScheduledFuture<?> scheduled = null;
+
+    private static long scheduledForExpiry = -1;
+
+    private SigningKeyRefresher() {}
+
+    static synchronized void schedule(long jwtSigningPublicKeyExpiryTime) {
+        if (scheduled != null && !scheduled.isDone() && scheduledForExpiry == jwtSigningPublicKeyExpiryTime) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long delay = jwtSigningPublicKeyExpiryTime > now ? jwtSigningPublicKeyExpiryTime - now : RETRY_INTERVAL;
+        scheduleAfter(delay, jwtSigningPublicKeyExpiryTime);
+    }
+
+    static synchronized void cancel() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        scheduledForExpiry = -1;
+    }
+
+    private static void scheduleAfter(long delay, long jwtSigningPublicKeyExpiryTime) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "supertokens-signing-key-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        scheduledForExpiry = jwtSigningPublicKeyExpiryTime;
+        scheduled = executor.schedule(SigningKeyRefresher::refresh, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void refresh() {
+        long expiryBefore;
+        synchronized (SigningKeyRefresher.class) {
+            expiryBefore = scheduledForExpiry;
+        }
+        try {
+            JsonObject response = Querier.getInstance().sendPostRequest("handshake", "/handshake", new JsonObject());
+            HandshakeInfo.getInstance().updateJwtSigningPublicKeyInfo(
+                    response.get("jwtSigningPublicKey").getAsString(),
+                    response.get("jwtSigningPublicKeyExpiryTime").getAsLong());
+        } catch (Exception ignored) {}
+        synchronized (SigningKeyRefresher.class) {
+            // the key did not change, so the core has not rotated yet or could not be reached
+            if (scheduledForExpiry == expiryBefore) {
+                long now = System.currentTimeMillis();
+                scheduleAfter(expiryBefore > now ? expiryBefore - now : RETRY_INTERVAL, expiryBefore);
+            }
+        }
+    }
+}
@@ -18,66 +18,24 @@ package io.supertokens.javalin.core;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
 import io.supertokens.javalin.core.exception.GeneralException;
-import io.supertokens.javalin.core.informationHolders.SessionTokens;
-import io.supertokens.javalin.core.informationHolders.TokenInfo;
+import org.jetbrains.annotations.TestOnly;
 
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class Utils {
 
-    public static SessionTokens parseJsonResponse(JsonObject response) {
-        JsonObject sessionJson = response.getAsJsonObject("session");
-        JsonObject accessTokenJson = response.getAsJsonObject("accessToken");
-        JsonObject refreshTokenJson = response.getAsJsonObject("refreshToken");
-        JsonObject idRefreshTokenJson = response.getAsJsonObject("idRefreshToken");
-        String antiCSRFToken = response.get("antiCsrfToken") == null ? null :
-                response.get("antiCsrfToken").getAsString();
-
-        TokenInfo accessToken = null;
-        if (accessTokenJson != null) {
-            accessToken = new TokenInfo(
-                    accessTokenJson.get("token").getAsString(),
-                    accessTokenJson.get("expiry").getAsLong(),
-                    accessTokenJson.get("createdTime").getAsLong(),
-                    accessTokenJson.get("cookiePath").getAsString(),
-                    accessTokenJson.get("cookieSecure").getAsBoolean(),
-                    accessTokenJson.has("domain") ? accessTokenJson.get("domain").getAsString() : null,
-                    accessTokenJson.get("sameSite").getAsString());
-        }
-        TokenInfo refreshToken = null;
-        if (refreshTokenJson != null) {
-            refreshToken = new TokenInfo(
-                    refreshTokenJson.get("token").getAsString(),
-                    refreshTokenJson.get("expiry").getAsLong(),
-                    refreshTokenJson.get("createdTime").getAsLong(),
-                    refreshTokenJson.get("cookiePath").getAsString(),
-                    refreshTokenJson.get("cookieSecure").getAsBoolean(),
-                    refreshTokenJson.has("domain") ? refreshTokenJson.get("domain").getAsString() : null,
-                    refreshTokenJson.get("sameSite").getAsString());
-        }
-        TokenInfo idRefreshToken = null;
-        if (idRefreshTokenJson != null) {
-            idRefreshToken = new TokenInfo(
-                    idRefreshTokenJson.get("token").getAsString(),
-                    idRefreshTokenJson.get("expiry").getAsLong(),
-                    idRefreshTokenJson.get("createdTime").getAsLong(),
-                    idRefreshTokenJson.get("cookiePath").getAsString(),
-                    idRefreshTokenJson.get("cookieSecure").getAsBoolean(),
-                    idRefreshTokenJson.has("domain") ? idRefreshTokenJson.get("domain").getAsString() : null,
-                    idRefreshTokenJson.get("sameSite").getAsString());
-        }
-        return new SessionTokens(
-                sessionJson.get("handle").getAsString(),
-                sessionJson.get("userId").getAsString(),
-                sessionJson.getAsJsonObject("userDataInJWT"),
-                accessToken, refreshToken, idRefreshToken, antiCSRFToken);
-    }
+    private static final Map<String, VerifierPool> verifierPools = new ConcurrentHashMap<>();
 
     public static String getLargestVersionFromIntersection(String[] v1, String[] v2) {
         Set<String> v2Set = new HashSet<>(Arrays.asList(v2));
@@ -126,29 +84,144 @@ public class Utils {
 
     public static boolean verifyWithPublicKey(String content, String signature, String publicKey)
             throws NoSuchAlgorithmException, InvalidKeySpecException, InvalidKeyException, SignatureException {
-        Signature sign = Signature.getInstance("SHA256withRSA");
-        Base64.Decoder decoder = Base64.getDecoder();
-        X509EncodedKeySpec ks = new X509EncodedKeySpec(decoder.decode(publicKey));
-        KeyFactory kf = KeyFactory.getInstance("RSA");
-        PublicKey pub = kf.generatePublic(ks);
+        byte[] contentBytes = stringToBytes(content);
+        byte[] signatureBytes = Base64.getDecoder().decode(signature);
+        return verifyWithPublicKey(contentBytes, 0, contentBytes.length, signatureBytes, 0, signatureBytes.length,
+                publicKey);
+    }
+
+    public static boolean verifyWithPublicKey(byte[] content, int contentOffset, int contentLength, byte[] signature,
+                                              int signatureOffset, int signatureLength, String publicKey)
+            throws NoSuchAlgorithmException, InvalidKeySpecException, InvalidKeyException, SignatureException {
+        VerifierPool pool = getVerifierPool(publicKey);
+        Signature sign = pool.acquire();
+        sign.update(content, contentOffset, contentLength);
+        boolean verified = sign.verify(signature, signatureOffset, signatureLength);
+        // only returned when verify() completed, which leaves it reset for the same key. One that threw is dropped
+        pool.release(sign);
+        return verified;
+    }
+
+    private static VerifierPool getVerifierPool(String publicKey)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        VerifierPool pool = verifierPools.get(publicKey);
+        if (pool == null) {
+            X509EncodedKeySpec ks = new X509EncodedKeySpec(Base64.getDecoder().decode(publicKey));
+            KeyFactory kf = KeyFactory.getInstance("RSA");
+            pool = new VerifierPool(kf.generatePublic(ks));
+            VerifierPool existing = verifierPools.putIfAbsent(publicKey, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    static PublicKey getPublicKey(String publicKey) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        return getVerifierPool(publicKey).publicKey;
+    }
 
-        sign.initVerify(pub);
-        sign.update(stringToBytes(content));
-        return sign.verify(decoder.decode(signature));
+    static void retainPublicKeys(Collection<String> publicKeys) {
+        verifierPools.keySet().retainAll(publicKeys);
     }
+
+    /*
+     * A Signature object is not thread safe, so each one is used by a single verification at a time. The ones that
+     * are idle are kept per public key, already initialised for it, and shared by every thread. Unlike a per-thread
+     * cache this still reuses them when each request runs on a new, short-lived thread, as virtual threads do. At
+     * most MAX_IDLE are kept per key; more than that are only created under bursts and are left to the GC.
+     */
+    static class VerifierPool {
+        static final int MAX_IDLE = 64;
+
+        final PublicKey publicKey;
+        private final Queue<Signature> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger(0);
+
+        VerifierPool(PublicKey publicKey) {
+            this.publicKey = publicKey;
+        }
+
+        Signature acquire() throws NoSuchAlgorithmException, InvalidKeyException {
+            Signature signature = this.idle.poll();
+            if (signature != null) {
+                this.idleCount.decrementAndGet();
+                return signature;
+            }
+            signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(this.publicKey);
+            return signature;
+        }
+
+        void release(Signature signature) {
+            if (this.idleCount.incrementAndGet() <= MAX_IDLE) {
+                this.idle.offer(signature);
+            } else {
+                this.idleCount.decrementAndGet();
+            }
+        }
+
+        int getIdleCount() {
+            return this.idleCount.get();
+        }
+    }
+
+    @TestOnly
+    static VerifierPool getVerifierPoolForTesting(String publicKey) {
+        return verifierPools.get(publicKey);
+    }
+
     public static String convertFromBase64(String str) {
         return new String(Base64.getDecoder().decode(stringToBytes(str)));
     }
 
-    public static Map<String, Object> jsonObjectToMap(JsonObject json) throws GeneralException {
+    // CompletableFuture wraps what a stage throws, and get() wraps it once more
+    public static Throwable unwrapFutureException(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /*
+     * Lets a stage of a CompletableFuture throw checked exceptions, so that async variants fail with the same
+     * exceptions the blocking ones throw, wrapped in a CompletionException.
+     */
+    public static <T, R> Function<T, R> unchecked(CheckedFunction<T, R> function) {
+        return input -> {
+            try {
+                return function.apply(input);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface CheckedFunction<T, R> {
+        R apply(T input) throws Exception;
+    }
+
+    public static GeneralException toGeneralException(Exception e) {
         try {
-            return new Gson().fromJson(json.toString(), new TypeToken<Map<String, Object>>(){}.getType());
-        } catch (Exception e) {
-            throw new GeneralException(e);
+            return new GeneralException(e);
+        } catch (GeneralException generalException) {
+            return generalException;
         }
     }
 
+    // a read-only view, see JsonMapView
+    public static Map<String, Object> jsonObjectToMap(JsonObject json) {
+        return new JsonMapView(json);
+    }
+
     public static JsonObject mapToJsonObject(Map<String, Object>  map) throws GeneralException {
+        if (map instanceof JsonMapView) {
+            // only ever serialised into a request body, so the JSON it was read from can be sent as it is
+            return ((JsonMapView) map).json;
+        }
         try {
             return new Gson().toJsonTree(map).getAsJsonObject();
         } catch (Exception e) {
@@ -16,33 +16,98 @@
 
 package io.supertokens.javalin.core.accessToken;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import io.supertokens.javalin.core.exception.TryRefreshTokenException;
+import io.supertokens.javalin.core.informationHolders.JwtSigningKey;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AccessToken {
+
+    private static final String MISSING_INFORMATION_MESSAGE =
+            "Access token does not contain all the information. Maybe the structure has changed?";
+
+    private static final LongAdder nonPrimaryKeyVerifications = new LongAdder();
+
     public static AccessTokenInfo getInfoFromAccessToken(String token, String jwtSigningPublicKey, boolean doAntiCsrfCheck)
             throws TryRefreshTokenException {
+        VerificationResult result = verifyLocally(token,
+                Collections.singletonList(new JwtSigningKey(jwtSigningPublicKey, Long.MAX_VALUE)), doAntiCsrfCheck);
+        if (result.status != VerificationResult.Status.VERIFIED) {
+            throw new TryRefreshTokenException(result.message);
+        }
+        return result.info;
+    }
+
+    /*
+     * jwtSigningPublicKeys are tried from the most to the least recent, skipping the ones that have expired. Results of
+     * TRY_REFRESH are only final because the keys are ones the core is still signing with.
+     */
+    public static VerificationResult verifyLocally(String token, List<JwtSigningKey> jwtSigningPublicKeys,
+                                                   boolean doAntiCsrfCheck) {
+        long now = System.currentTimeMillis();
+        List<String> validKeys = new ArrayList<>(jwtSigningPublicKeys.size());
+        for (JwtSigningKey key : jwtSigningPublicKeys) {
+            if (key.expiryTime > now) {
+                validKeys.add(key.publicKey);
+            }
+        }
+        if (validKeys.size() == 0) {
+            return VerificationResult.askCore("No valid JWT signing key");
+        }
+
+        AccessTokenInfo cachedInfo = AccessTokenCache.get(token, validKeys);
+        if (cachedInfo != null) {
+            if (doAntiCsrfCheck && cachedInfo.antiCsrfToken == null) {
+                return VerificationResult.askCore(MISSING_INFORMATION_MESSAGE);
+            }
+            return VerificationResult.verified(cachedInfo);
+        }
         try {
-            JsonObject payload = JWT.verifyJWTAndGetPayload(token, jwtSigningPublicKey);
-            AccessTokenInfo tokenInfo = new Gson().fromJson(payload, AccessTokenInfo.class);
+            JWT.checkStructure(token);
+        } catch (JWT.JWTException e) {
+            return VerificationResult.tryRefresh("Malformed access token");
+        }
+        if (RejectedSignatureCache.contains(JWT.getSignature(token), validKeys)) {
+            return VerificationResult.tryRefresh("Access token signature was rejected");
+        }
+        try {
+            JWT.VerifiedPayload verifiedPayload = JWT.verifyJWTAndGetPayload(token, validKeys);
+            if (verifiedPayload.keyIndex != 0) {
+                nonPrimaryKeyVerifications.increment();
+            }
+            AccessTokenInfo tokenInfo = AccessTokenInfo.fromPayload(verifiedPayload.payload);
             if (tokenInfo.sessionHandle == null || tokenInfo.userId == null || tokenInfo.refreshTokenHash1 == null
-                    || tokenInfo.userData == null || (doAntiCsrfCheck && tokenInfo.antiCsrfToken == null)) {
-                throw new TryRefreshTokenException(
-                        "Access token does not contain all the information. Maybe the structure has changed?");
+                    || !tokenInfo.hasUserData || (doAntiCsrfCheck && tokenInfo.antiCsrfToken == null)) {
+                return VerificationResult.askCore(MISSING_INFORMATION_MESSAGE);
             }
 
             if (tokenInfo.expiryTime < System.currentTimeMillis()) {
-                throw new TryRefreshTokenException("Access token expired");
+                return VerificationResult.tryRefresh("Access token expired");
             }
-            return tokenInfo;
-        } catch (InvalidKeyException | NoSuchAlgorithmException | JWT.JWTException e) {
-            throw new TryRefreshTokenException("Error while verifying JWT");
+            AccessTokenCache.put(token, validKeys.get(verifiedPayload.keyIndex), tokenInfo);
+            return VerificationResult.verified(tokenInfo);
+        } catch (JWT.InvalidSignatureException e) {
+            return VerificationResult.signatureRejected(validKeys);
+        } catch (InvalidKeyException | NoSuchAlgorithmException | JWT.JWTException | IOException | RuntimeException e) {
+            return VerificationResult.askCore("Error while verifying JWT");
         }
+    }
 
+    // number of access tokens whose signature only matched a key older than the most recent one
+    public static long getNonPrimaryKeyVerificationCount() {
+        return nonPrimaryKeyVerifications.sum();
     }
 
     public static class AccessTokenInfo {
@@ -50,22 +115,103 @@ public class AccessToken {
         public final String userId;
         public final String refreshTokenHash1;
         public final String parentRefreshTokenHash1;
-        public final JsonObject userData;
         public final String antiCsrfToken;
         public final long expiryTime;
         final long timeCreated;
+        private final boolean hasUserData;
+        private final String payload;
+        private volatile JsonObject userData = null;
 
-        AccessTokenInfo(String sessionHandle, String userId,  String refreshTokenHash1,
-                        long expiryTime, String parentRefreshTokenHash1, JsonObject userData,
-                        String antiCsrfToken, long timeCreated, boolean isPaid) {
+        private AccessTokenInfo(String sessionHandle, String userId, String refreshTokenHash1,
+                                long expiryTime, String parentRefreshTokenHash1, boolean hasUserData,
+                                String antiCsrfToken, long timeCreated, String payload) {
             this.sessionHandle = sessionHandle;
             this.userId = userId;
             this.refreshTokenHash1 = refreshTokenHash1;
             this.expiryTime = expiryTime;
             this.parentRefreshTokenHash1 = parentRefreshTokenHash1;
-            this.userData = userData;
+            this.hasUserData = hasUserData;
             this.antiCsrfToken = antiCsrfToken;
             this.timeCreated = timeCreated;
+            this.payload = payload;
+        }
+
+        // userData is skipped while reading the rest of the payload and is only parsed the first time it is asked for
+        public JsonObject getUserData() {
+            JsonObject result = this.userData;
+            if (result == null && this.hasUserData) {
+                try (JsonReader reader = new JsonReader(new StringReader(this.payload))) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("userData")) {
+                            JsonElement element = new JsonParser().parse(reader);
+                            result = element.getAsJsonObject();
+                            break;
+                        }
+                        reader.skipValue();
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                this.userData = result;
+            }
+            return result;
+        }
+
+        static AccessTokenInfo fromPayload(String payload) throws IOException {
+            String sessionHandle = null;
+            String userId = null;
+            String refreshTokenHash1 = null;
+            String parentRefreshTokenHash1 = null;
+            String antiCsrfToken = null;
+            long expiryTime = 0;
+            long timeCreated = 0;
+            boolean hasUserData = false;
+            try (JsonReader reader = new JsonReader(new StringReader(payload))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        continue;
+                    }
+                    switch (name) {
+                        case "sessionHandle":
+                            sessionHandle = reader.nextString();
+                            break;
+                        case "userId":
+                            userId = reader.nextString();
+                            break;
+                        case "refreshTokenHash1":
+                            refreshTokenHash1 = reader.nextString();
+                            break;
+                        case "parentRefreshTokenHash1":
+                            parentRefreshTokenHash1 = reader.nextString();
+                            break;
+                        case "antiCsrfToken":
+                            antiCsrfToken = reader.nextString();
+                            break;
+                        case "expiryTime":
+                            expiryTime = reader.nextLong();
+                            break;
+                        case "timeCreated":
+                            timeCreated = reader.nextLong();
+                            break;
+                        case "userData":
+                            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                                throw new IOException("userData in access token is not an object");
+                            }
+                            hasUserData = true;
+                            reader.skipValue();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            return new AccessTokenInfo(sessionHandle, userId, refreshTokenHash1, expiryTime, parentRefreshTokenHash1,
+                    hasUserData, antiCsrfToken, timeCreated, payload);
         }
     }
 }
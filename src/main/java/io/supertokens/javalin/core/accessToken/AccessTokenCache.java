@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.supertokens.javalin.core.accessToken;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Access tokens that have already passed signature verification, so that repeat requests with the same token do not
+ * redo the crypto and payload parsing. Entries are dropped once the token expires or the key that verified it is no
+ * longer valid.
+ */
+public class AccessTokenCache {
+
+    private static final int MAX_SIZE = 10000;
+
+    private static final long EVICTION_INTERVAL = 1000;
+
+    private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private static volatile long lastEvictionTime = 0;
+
+    private AccessTokenCache() {}
+
+    static AccessToken.AccessTokenInfo get(String token, List<String> jwtSigningPublicKeys) {
+        Entry entry = cache.get(token);
+        if (entry == null) {
+            return null;
+        }
+        if (!jwtSigningPublicKeys.contains(entry.jwtSigningPublicKey) ||
+                entry.info.expiryTime < System.currentTimeMillis()) {
+            cache.remove(token, entry);
+            return null;
+        }
+        return entry.info;
+    }
+
+    static void put(String token, String jwtSigningPublicKey, AccessToken.AccessTokenInfo info) {
+        if (cache.size() >= MAX_SIZE) {
+            evictExpired();
+            if (cache.size() >= MAX_SIZE) {
+                return;
+            }
+        }
+        cache.put(token, new Entry(jwtSigningPublicKey, info));
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static void evictExpired() {
+        long now = System.currentTimeMillis();
+        if (now - lastEvictionTime < EVICTION_INTERVAL) {
+            return;
+        }
+        lastEvictionTime = now;
+        cache.values().removeIf(entry -> entry.info.expiryTime < now);
+    }
+
+    private static class Entry {
+        final String jwtSigningPublicKey;
+        final AccessToken.AccessTokenInfo info;
+
+        Entry(String jwtSigningPublicKey, AccessToken.AccessTokenInfo info) {
+            this.jwtSigningPublicKey = jwtSigningPublicKey;
+            this.info = info;
+        }
+    }
+}
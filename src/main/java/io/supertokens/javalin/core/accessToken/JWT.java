@@ -20,14 +20,42 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import io.supertokens.javalin.core.Utils;
 
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class JWT {
     private static String HEADERv2 = null;
 
+    private static final int MAX_POOLED_BUFFER_SIZE = 16 * 1024;
+
+    private static final int MAX_LENGTH = 16 * 1024;
+
+    // "{}" and the shortest RSA signature we would accept, both base64 encoded
+    private static final int MIN_PAYLOAD_LENGTH = 4;
+    private static final int MIN_SIGNATURE_LENGTH = 4;
+
+    private static final ThreadLocal<byte[]> buffer = ThreadLocal.withInitial(() -> new byte[2048]);
+
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+        BASE64_VALUES['+'] = 62;
+        BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['/'] = 63;
+        BASE64_VALUES['_'] = 63;
+    }
+
     private static void initHeader() {
         if (HEADERv2 == null) {
             JsonObject header = new JsonObject();
@@ -40,25 +68,139 @@ public class JWT {
 
     public static JsonObject verifyJWTAndGetPayload(String jwt, String publicSigningKey)
             throws InvalidKeyException, NoSuchAlgorithmException, JWTException {
+        VerifiedPayload verifiedPayload = verifyJWTAndGetPayload(jwt, Collections.singletonList(publicSigningKey));
+        try {
+            return (JsonObject) new JsonParser().parse(verifiedPayload.payload);
+        } catch (RuntimeException e) {
+            throw new JWTException("Invalid JWT payload");
+        }
+    }
+
+    /*
+     * Cheap checks that do not need the signing key: overall length, the exact v2 header, and that the payload and
+     * signature only use base64 characters. A token failing these can never verify.
+     */
+    static void checkStructure(String jwt) throws JWTException {
         initHeader();
-        String[] splittedInput = jwt.split("\\.");
-        if (splittedInput.length != 3) {
+        int length = jwt.length();
+        int headerLength = JWT.HEADERv2.length();
+        if (length > MAX_LENGTH || length < headerLength + MIN_PAYLOAD_LENGTH + MIN_SIGNATURE_LENGTH + 2) {
             throw new JWTException("Invalid JWT");
         }
         // checking header
-        if (!splittedInput[0].equals(JWT.HEADERv2)) {
+        if (!jwt.startsWith(JWT.HEADERv2) || jwt.charAt(headerLength) != '.') {
             throw new JWTException("JWT header mismatch");
         }
+        int secondDot = -1;
+        for (int i = headerLength + 1; i < length; i++) {
+            char c = jwt.charAt(i);
+            if (c == '.') {
+                if (secondDot != -1) {
+                    throw new JWTException("Invalid JWT");
+                }
+                secondDot = i;
+            } else if (c != '=' && (c >= 128 || BASE64_VALUES[c] == -1)) {
+                throw new JWTException("Invalid JWT");
+            }
+        }
+        if (secondDot == -1 || secondDot - headerLength - 1 < MIN_PAYLOAD_LENGTH ||
+                length - secondDot - 1 < MIN_SIGNATURE_LENGTH) {
+            throw new JWTException("Invalid JWT");
+        }
+    }
+
+    static String getSignature(String jwt) {
+        return jwt.substring(jwt.lastIndexOf('.') + 1);
+    }
+
+    /*
+     * publicSigningKeys are tried in order, and the returned payload says which one verified the signature.
+     */
+    static VerifiedPayload verifyJWTAndGetPayload(String jwt, List<String> publicSigningKeys)
+            throws InvalidKeyException, NoSuchAlgorithmException, JWTException {
+        checkStructure(jwt);
+        int firstDot = JWT.HEADERv2.length();
+        int secondDot = jwt.indexOf('.', firstDot + 1);
+
+        // the token is laid out as ascii bytes at the start of the buffer, followed by the decoded signature and
+        // then the decoded payload. Decoded base64 is at most 3/4 the size of its input, so 2x is always enough.
+        int length = jwt.length();
+        byte[] buf = getBuffer(2 * length);
+        for (int i = 0; i < length; i++) {
+            char c = jwt.charAt(i);
+            // casting would keep only the low byte, so a non-ascii char could stand in for the ascii one it ends in
+            if (c >= 128) {
+                throw new JWTException("Invalid JWT");
+            }
+            buf[i] = (byte) c;
+        }
+        int signatureLength = decodeBase64(buf, secondDot + 1, length, buf, length);
+        int payloadOffset = length + signatureLength;
+        int payloadLength = decodeBase64(buf, firstDot + 1, secondDot, buf, payloadOffset);
+
         // verifying signature
-        String payload = splittedInput[1];
-        try {
-            if (!Utils.verifyWithPublicKey(splittedInput[0] + "." + payload, splittedInput[2], publicSigningKey)) {
-                throw new JWTException("JWT verification failed");
+        for (int i = 0; i < publicSigningKeys.size(); i++) {
+            try {
+                if (Utils.verifyWithPublicKey(buf, 0, secondDot, buf, length, signatureLength,
+                        publicSigningKeys.get(i))) {
+                    return new VerifiedPayload(new String(buf, payloadOffset, payloadLength, StandardCharsets.UTF_8), i);
+                }
+            } catch (InvalidKeySpecException | SignatureException ignored) {}
+        }
+        throw new InvalidSignatureException();
+    }
+
+    static class VerifiedPayload {
+        final String payload;
+        // index into the list of keys given to verifyJWTAndGetPayload
+        final int keyIndex;
+
+        VerifiedPayload(String payload, int keyIndex) {
+            this.payload = payload;
+            this.keyIndex = keyIndex;
+        }
+    }
+
+    private static byte[] getBuffer(int size) {
+        if (size > MAX_POOLED_BUFFER_SIZE) {
+            return new byte[size];
+        }
+        byte[] buf = JWT.buffer.get();
+        if (buf.length < size) {
+            buf = new byte[MAX_POOLED_BUFFER_SIZE];
+            JWT.buffer.set(buf);
+        }
+        return buf;
+    }
+
+    /*
+     * Decodes src[from, to) into dst starting at dstOffset and returns the number of bytes written. Accepts both the
+     * standard and the url safe alphabet, with or without padding.
+     */
+    private static int decodeBase64(byte[] src, int from, int to, byte[] dst, int dstOffset) throws JWTException {
+        while (to > from && src[to - 1] == '=') {
+            to--;
+        }
+        if ((to - from) % 4 == 1) {
+            throw new JWTException("Invalid JWT");
+        }
+        int bits = 0;
+        int bitCount = 0;
+        int written = 0;
+        for (int i = from; i < to; i++) {
+            int c = src[i];
+            int value = c < 0 ? -1 : BASE64_VALUES[c];
+            if (value == -1) {
+                throw new JWTException("Invalid JWT");
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                dst[dstOffset + written++] = (byte) (bits >> bitCount);
             }
-        } catch (InvalidKeySpecException | SignatureException e) {
-            throw new JWTException("JWT verification failed");
         }
-        return (JsonObject) new JsonParser().parse(Utils.convertFromBase64(splittedInput[1]));
+        return written;
     }
 
     public static class JWTException extends Exception {
@@ -69,4 +211,14 @@ public class JWT {
             super(err);
         }
     }
+
+    // the JWT is well formed, but was not signed by any of the keys it was checked against
+    static class InvalidSignatureException extends JWTException {
+
+        private static final long serialVersionUID = 1L;
+
+        InvalidSignatureException() {
+            super("JWT verification failed");
+        }
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.supertokens.javalin.core.accessToken;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * refreshTokenHash1 values whose access tokens the core has already accepted while they still carried a
+ * parentRefreshTokenHash1. The core promotes the refresh token on that first call, so later requests with a child
+ * token of the same refresh token can be verified locally.
+ */
+public class PromotedRefreshTokenCache {
+
+    private static final int MAX_SIZE = 10000;
+
+    private static final long EVICTION_INTERVAL = 1000;
+
+    private static final Map<String, Long> cache = new ConcurrentHashMap<>();
+
+    private static volatile long lastEvictionTime = 0;
+
+    private PromotedRefreshTokenCache() {}
+
+    public static boolean contains(String refreshTokenHash1) {
+        Long expiryTime = cache.get(refreshTokenHash1);
+        if (expiryTime == null) {
+            return false;
+        }
+        if (expiryTime < System.currentTimeMillis()) {
+            cache.remove(refreshTokenHash1, expiryTime);
+            return false;
+        }
+        return true;
+    }
+
+    public static void add(String refreshTokenHash1, long expiryTime) {
+        if (cache.size() >= MAX_SIZE) {
+            evictExpired();
+            if (cache.size() >= MAX_SIZE) {
+                return;
+            }
+        }
+        cache.merge(refreshTokenHash1, expiryTime, Math::max);
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static void evictExpired() {
+        long now = System.currentTimeMillis();
+        if (now - lastEvictionTime < EVICTION_INTERVAL) {
+            return;
+        }
+        lastEvictionTime = now;
+        cache.values().removeIf(expiryTime -> expiryTime < now);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.accessToken;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Signatures of access tokens that recently failed verification against every signing key the SDK knows and were then
+ * refused by the core, so that a client sending the same bad token again is refused without contacting the core. This
+ * only catches exact replays: a client that changes the token each time still costs one call to the core per request.
+ *
+ * An entry only counts for the exact window of keys it was checked against, so it stops counting as soon as a key is
+ * learnt or dropped. A token the core accepts anyway is removed, in case the SDK had not yet learnt its key.
+ */
+public class RejectedSignatureCache {
+
+    static final int MAX_SIZE = 1000;
+
+    static final long TIME_TO_LIVE = 60000;
+
+    private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private RejectedSignatureCache() {}
+
+    static boolean contains(String signature, List<String> jwtSigningPublicKeys) {
+        Entry entry = cache.get(signature);
+        if (entry == null) {
+            return false;
+        }
+        if (!entry.jwtSigningPublicKeys.equals(jwtSigningPublicKeys) ||
+                entry.timeAdded + TIME_TO_LIVE < System.currentTimeMillis()) {
+            cache.remove(signature, entry);
+            return false;
+        }
+        return true;
+    }
+
+    static void add(String signature, List<String> jwtSigningPublicKeys) {
+        add(signature, jwtSigningPublicKeys, System.currentTimeMillis());
+    }
+
+    static void add(String signature, List<String> jwtSigningPublicKeys, long timeAdded) {
+        if (cache.size() >= MAX_SIZE) {
+            cache.clear();
+        }
+        cache.put(signature, new Entry(List.copyOf(jwtSigningPublicKeys), timeAdded));
+    }
+
+    public static void remove(String accessToken) {
+        cache.remove(JWT.getSignature(accessToken));
+    }
+
+    static int size() {
+        return cache.size();
+    }
+
+    public static void clear() {
+        cache.clear();
+    }
+
+    private static class Entry {
+        final List<String> jwtSigningPublicKeys;
+        final long timeAdded;
+
+        Entry(List<String> jwtSigningPublicKeys, long timeAdded) {
+            this.jwtSigningPublicKeys = jwtSigningPublicKeys;
+            this.timeAdded = timeAdded;
+        }
+    }
+}
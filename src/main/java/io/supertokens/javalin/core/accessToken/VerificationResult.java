@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.supertokens.javalin.core.accessToken;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+public class VerificationResult {
+
+    public enum Status {
+        // the token is valid and its info can be used as is
+        VERIFIED,
+        // the token was checked against a valid signing key and can never pass, so the core would say the same
+        TRY_REFRESH,
+        // the token could not be decided locally and the core has to be asked
+        ASK_CORE
+    }
+
+    public final Status status;
+
+    @Nullable
+    public final AccessToken.AccessTokenInfo info;
+
+    @Nullable
+    public final String message;
+
+    // the keys the signature failed against, if that is why the core has to be asked
+    @Nullable
+    private final List<String> rejectedByKeys;
+
+    private VerificationResult(Status status, @Nullable AccessToken.AccessTokenInfo info, @Nullable String message,
+                               @Nullable List<String> rejectedByKeys) {
+        this.status = status;
+        this.info = info;
+        this.message = message;
+        this.rejectedByKeys = rejectedByKeys;
+    }
+
+    static VerificationResult verified(AccessToken.AccessTokenInfo info) {
+        return new VerificationResult(Status.VERIFIED, info, null, null);
+    }
+
+    static VerificationResult tryRefresh(String message) {
+        return new VerificationResult(Status.TRY_REFRESH, null, message, null);
+    }
+
+    static VerificationResult askCore(String message) {
+        return new VerificationResult(Status.ASK_CORE, null, message, null);
+    }
+
+    static VerificationResult signatureRejected(List<String> jwtSigningPublicKeys) {
+        return new VerificationResult(Status.ASK_CORE, null, "Error while verifying JWT", jwtSigningPublicKeys);
+    }
+
+    /*
+     * Called once the core has also refused the token. Only then is its signature remembered, since the core may still
+     * accept a token signed with a key the SDK has not learnt yet, and requests replaying the token meanwhile have to
+     * ask the core too.
+     */
+    public void onRejectedByCore(String accessToken) {
+        if (this.rejectedByKeys != null) {
+            RejectedSignatureCache.add(JWT.getSignature(accessToken), this.rejectedByKeys);
+        }
+    }
+}
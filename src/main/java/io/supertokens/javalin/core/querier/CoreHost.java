@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.supertokens.javalin.core.querier;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Health of one core host. A host is ejected after a few consecutive failures (refused connections, timeouts, resets,
+ * 5xx). Once the ejection time has passed, a single request is let through as a probe: if it succeeds the host is
+ * re-admitted, if it fails the host is ejected again for twice as long, up to MAX_EJECTION_TIME.
+ */
+class CoreHost implements LoadBalancer.Host {
+
+    static final int FAILURES_BEFORE_EJECTION = 3;
+
+    static final long BASE_EJECTION_TIME = 5000;
+
+    static final long MAX_EJECTION_TIME = 60000;
+
+    // how fast the latency average forgets older responses
+    private static final double LATENCY_DECAY_TIME = TimeUnit.SECONDS.toNanos(10);
+
+    // a probe whose outcome was never recorded stops blocking other probes after this long
+    private static final long PROBE_TIMEOUT = 2 * HttpTransport.TIMEOUT;
+
+    final String url;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+
+    private final AtomicLong probeStartedAt = new AtomicLong(0);
+
+    private volatile long ejectedUntil = 0;
+
+    private int ejections = 0;
+
+    private final AtomicInteger outstandingRequests = new AtomicInteger(0);
+
+    // bits of a double, so that it can be updated with compareAndSet
+    private final AtomicLong latency = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    private final AtomicLong lastResponseAt = new AtomicLong(System.nanoTime());
+
+    CoreHost(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public String getUrl() {
+        return this.url;
+    }
+
+    @Override
+    public int getOutstandingRequests() {
+        return this.outstandingRequests.get();
+    }
+
+    @Override
+    public double getLatency() {
+        return Double.longBitsToDouble(this.latency.get());
+    }
+
+    // 0 while the host is not ejected
+    long getEjectedUntil() {
+        return this.ejectedUntil;
+    }
+
+    // same as tryAcquire, without taking the probe
+    boolean isAvailable(long now) {
+        long until = this.ejectedUntil;
+        if (until == 0) {
+            return true;
+        }
+        long started = this.probeStartedAt.get();
+        return now >= until && (started == 0 || now - started >= PROBE_TIMEOUT);
+    }
+
+    /*
+     * Whether a request may be sent to this host now. For an ejected host whose ejection time has passed, only the
+     * first caller gets true, and its request is the probe.
+     */
+    boolean tryAcquire(long now) {
+        long until = this.ejectedUntil;
+        if (until == 0) {
+            return true;
+        }
+        if (now < until) {
+            return false;
+        }
+        long started = this.probeStartedAt.get();
+        if (started != 0 && now - started < PROBE_TIMEOUT) {
+            return false;
+        }
+        return this.probeStartedAt.compareAndSet(started, now);
+    }
+
+    // returns the start time to give to onRequestEnd
+    long onRequestStart() {
+        this.outstandingRequests.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    // only requests that got a response are measured, so that a host that fails fast does not look cheap
+    void onRequestEnd(long startTime, boolean responded) {
+        long now = System.nanoTime();
+        this.outstandingRequests.decrementAndGet();
+        if (!responded) {
+            return;
+        }
+        double responseTime = (now - startTime) / 1_000_000.0;
+        long elapsed = Math.max(now - this.lastResponseAt.getAndSet(now), 0);
+        double weight = Math.exp(-elapsed / LATENCY_DECAY_TIME);
+        while (true) {
+            long current = this.latency.get();
+            double average = Double.longBitsToDouble(current);
+            double updated = responseTime > average ? responseTime : average * weight + responseTime * (1 - weight);
+            if (this.latency.compareAndSet(current, Double.doubleToRawLongBits(updated))) {
+                return;
+            }
+        }
+    }
+
+    void onSuccess() {
+        this.consecutiveFailures.set(0);
+        if (this.ejectedUntil != 0) {
+            synchronized (this) {
+                this.ejectedUntil = 0;
+                this.ejections = 0;
+                this.probeStartedAt.set(0);
+            }
+        }
+    }
+
+    void onFailure() {
+        onFailure(System.currentTimeMillis());
+    }
+
+    void onFailure(long now) {
+        long until = this.ejectedUntil;
+        if (until != 0) {
+            // requests sent before the ejection do not extend it, only a failed probe does
+            if (now >= until) {
+                eject(now);
+            }
+            return;
+        }
+        if (this.consecutiveFailures.incrementAndGet() >= FAILURES_BEFORE_EJECTION) {
+            eject(now);
+        }
+    }
+
+    private synchronized void eject(long now) {
+        long ejectionTime = Math.min(BASE_EJECTION_TIME << Math.min(this.ejections, 16), MAX_EJECTION_TIME);
+        this.ejections++;
+        this.consecutiveFailures.set(0);
+        this.ejectedUntil = now + ejectionTime;
+        this.probeStartedAt.set(0);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Decides when a read is sent to a second host. The hedge delay is the configured percentile of the latest response
+ * times of hedged reads, recomputed every RECOMPUTE_INTERVAL responses, and no hedge is sent before the first
+ * RECOMPUTE_INTERVAL responses. Hedges are paid for with tokens: each read earns maxHedgeRate of a token, capped at
+ * MAX_TOKENS, so that a slow cluster does not get twice the load.
+ */
+class Hedging {
+
+    static final int SAMPLE_COUNT = 1024;
+
+    static final int RECOMPUTE_INTERVAL = 128;
+
+    // tokens are counted in thousandths
+    static final long TOKEN = 1000;
+
+    static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final double percentile;
+
+    private final long tokensPerRequest;
+
+    // response times in nanoseconds, written round robin
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_COUNT);
+
+    private final AtomicLong sampleCount = new AtomicLong(0);
+
+    // in nanoseconds, -1 until enough responses were seen
+    private volatile long delay = -1;
+
+    private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+
+    final LongAdder fired = new LongAdder();
+
+    final LongAdder won = new LongAdder();
+
+    Hedging(double percentile, double maxHedgeRate) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+        }
+        if (maxHedgeRate < 0 || maxHedgeRate > 1) {
+            throw new IllegalArgumentException("maxHedgeRate must be between 0 and 1");
+        }
+        this.percentile = percentile;
+        this.tokensPerRequest = Math.round(maxHedgeRate * TOKEN);
+    }
+
+    long getDelay() {
+        return this.delay;
+    }
+
+    void onRequest() {
+        while (true) {
+            long current = this.tokens.get();
+            if (current >= MAX_TOKENS ||
+                    this.tokens.compareAndSet(current, Math.min(current + this.tokensPerRequest, MAX_TOKENS))) {
+                return;
+            }
+        }
+    }
+
+    boolean tryHedge() {
+        while (true) {
+            long current = this.tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (this.tokens.compareAndSet(current, current - TOKEN)) {
+                this.fired.increment();
+                return true;
+            }
+        }
+    }
+
+    void onResponse(long responseTime) {
+        long count = this.sampleCount.getAndIncrement() + 1;
+        this.samples.set((int) ((count - 1) % SAMPLE_COUNT), responseTime);
+        if (count % RECOMPUTE_INTERVAL == 0) {
+            int size = (int) Math.min(count, SAMPLE_COUNT);
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = this.samples.get(i);
+            }
+            Arrays.sort(sorted);
+            this.delay = sorted[Math.max((int) Math.ceil(this.percentile * size) - 1, 0)];
+        }
+    }
+}
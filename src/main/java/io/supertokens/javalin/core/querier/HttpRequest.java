@@ -16,9 +16,8 @@
 
 package io.supertokens.javalin.core.querier;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import io.supertokens.javalin.Constants;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.net.HttpURLConnection;
@@ -27,41 +26,20 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class HttpRequest {
-    private static final int STATUS_CODE_ERROR_THRESHOLD = 400;
+    static final int STATUS_CODE_ERROR_THRESHOLD = 400;
 
-    private static URL getURL(String requestID, String url) throws MalformedURLException {
-        URL obj = new URL(url);
+    private static URL getMockURL(String requestID, String url) throws MalformedURLException {
         if (Constants.IS_TESTING) {
-            URL mock = HttpRequestMocking.getInstance().getMockURL(requestID, url);
-            if (mock != null) {
-                obj = mock;
-            }
-        }
-        return obj;
-    }
-
-    private static boolean isJsonValid(String jsonInString) {
-        JsonElement el = null;
-        try {
-            el = new JsonParser().parse(jsonInString);
-            el.getAsJsonObject();
-            return true;
-        } catch (Exception ex) {
-            try {
-                assert el != null;
-                el.getAsJsonArray();
-                return true;
-            } catch (Throwable e) {
-                return false;
-            }
+            return HttpRequestMocking.getInstance().getMockURL(requestID, url);
         }
+        return null;
     }
 
-    @SuppressWarnings("unchecked")
-    public static <T> T sendGETRequest(String requestID, String url, Map<String, String> params, String version, String apiKey)
-            throws IOException, HttpResponseException {
+    static String getURLWithParams(String url, Map<String, String> params) {
         StringBuilder paramBuilder = new StringBuilder();
 
         if (params != null) {
@@ -76,67 +54,97 @@ public class HttpRequest {
             paramsStr = paramsStr.substring(0, paramsStr.length() - 1);
             url = url + "?" + paramsStr;
         }
-        URL obj = getURL(requestID, url);
-        InputStream inputStream = null;
-        HttpURLConnection con = null;
+        return url;
+    }
 
-        try {
-            con = (HttpURLConnection) obj.openConnection();
-            con.setConnectTimeout(10000);
-            con.setReadTimeout(10000);
-            if (version != null) {
-                con.setRequestProperty("cdi-version", version);
-            }
-            if (apiKey != null) {
-                con.setRequestProperty("api-key", apiKey);
-            }
+    private static java.net.http.HttpRequest getJsonRequest(String url, byte[] requestBody, String version,
+                                                            String apiKey, String method) {
+        java.net.http.HttpRequest.BodyPublisher body = requestBody == null ?
+                java.net.http.HttpRequest.BodyPublishers.noBody() :
+                java.net.http.HttpRequest.BodyPublishers.ofByteArray(requestBody);
+        return HttpTransport.newRequest(url, version, apiKey)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .method(method, body)
+                .build();
+    }
 
-            int responseCode = con.getResponseCode();
+    public static <T> T sendGETRequest(String requestID, String url, Map<String, String> params, String version, String apiKey)
+            throws IOException, HttpResponseException {
+        url = getURLWithParams(url, params);
+        URL mock = getMockURL(requestID, url);
+        if (mock != null) {
+            return sendWithConnection(mock, null, version, apiKey, "GET", null);
+        }
+        HttpTransport.Response response = HttpTransport.send(HttpTransport.newRequest(url, version, apiKey).GET().build());
+        return ResponseDecoder.decode(response, null);
+    }
 
-            if (responseCode < STATUS_CODE_ERROR_THRESHOLD) {
-                inputStream = con.getInputStream();
-            } else {
-                inputStream = con.getErrorStream();
-            }
+    private static <T> T sendJsonRequest(String requestID, String url, byte[] requestBody, String version,
+                                         String apiKey, String method, @Nullable ResponseReader<T> responseReader)
+            throws IOException, HttpResponseException {
+        URL mock = getMockURL(requestID, url);
+        if (mock != null) {
+            return sendWithConnection(mock, requestBody, version, apiKey, method, responseReader);
+        }
+        HttpTransport.Response response = HttpTransport.send(getJsonRequest(url, requestBody, version, apiKey, method));
+        return ResponseDecoder.decode(response, responseReader);
+    }
 
-            StringBuilder response = new StringBuilder();
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(inputStream))) {
-                String inputLine;
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
-                }
-            }
-            if (responseCode < STATUS_CODE_ERROR_THRESHOLD) {
-                if (!isJsonValid(response.toString())) {
-                    return (T) response.toString();
-                }
-                return (T) (new JsonParser().parse(response.toString()));
-            }
-            throw new HttpResponseException(responseCode, response.toString());
-        } finally {
-            if (inputStream != null) {
-                inputStream.close();
+    public static <T> CompletableFuture<T> sendGETRequestAsync(String requestID, String url, Map<String, String> params,
+                                                               String version, String apiKey) {
+        String urlWithParams = getURLWithParams(url, params);
+        try {
+            URL mock = getMockURL(requestID, urlWithParams);
+            if (mock != null) {
+                return CompletableFuture.completedFuture(sendWithConnection(mock, null, version, apiKey, "GET", null));
             }
+        } catch (IOException | HttpResponseException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return HttpTransport.sendAsync(HttpTransport.newRequest(urlWithParams, version, apiKey).GET().build())
+                .thenApply(response -> getResultAsync(response, null));
+    }
 
-            if (con != null) {
-                con.disconnect();
+    private static <T> CompletableFuture<T> sendJsonRequestAsync(String requestID, String url, byte[] requestBody,
+                                                                 String version, String apiKey, String method,
+                                                                 @Nullable ResponseReader<T> responseReader) {
+        try {
+            URL mock = getMockURL(requestID, url);
+            if (mock != null) {
+                return CompletableFuture.completedFuture(sendWithConnection(mock, requestBody, version, apiKey, method,
+                        responseReader));
             }
+        } catch (IOException | HttpResponseException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        return HttpTransport.sendAsync(getJsonRequest(url, requestBody, version, apiKey, method))
+                .thenApply(response -> getResultAsync(response, responseReader));
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T> T sendJsonRequest(String requestID, String url, JsonElement requestBody, String version,
-                                         String apiKey, String method)
+    private static <T> T getResultAsync(HttpTransport.Response response, @Nullable ResponseReader<T> responseReader) {
+        try {
+            return ResponseDecoder.decode(response, responseReader);
+        } catch (IOException | HttpResponseException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /*
+     * Used only for URLs swapped in by HttpRequestMocking, whose connections are stubbed by the tests.
+     */
+    private static <T> T sendWithConnection(URL obj, byte[] requestBody, String version, String apiKey,
+                                            String method, @Nullable ResponseReader<T> responseReader)
             throws IOException, HttpResponseException {
-        URL obj = getURL(requestID, url);;
         InputStream inputStream = null;
         HttpURLConnection con = null;
         try {
             con = (HttpURLConnection) obj.openConnection();
             con.setRequestMethod(method);
-            con.setConnectTimeout(10000);
-            con.setReadTimeout(10000);
-            con.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            con.setConnectTimeout(HttpTransport.TIMEOUT);
+            con.setReadTimeout(HttpTransport.TIMEOUT);
+            if (requestBody != null) {
+                con.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            }
             if (version != null) {
                 con.setRequestProperty("cdi-version", version);
             }
@@ -147,8 +155,7 @@ public class HttpRequest {
             if (requestBody != null) {
                 con.setDoOutput(true);
                 try (OutputStream os = con.getOutputStream()) {
-                    byte[] input = requestBody.toString().getBytes(StandardCharsets.UTF_8);
-                    os.write(input, 0, input.length);
+                    os.write(requestBody);
                 }
             }
 
@@ -160,21 +167,7 @@ public class HttpRequest {
                 inputStream = con.getErrorStream();
             }
 
-            StringBuilder response = new StringBuilder();
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-                String inputLine;
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
-                }
-            }
-
-            if (responseCode < STATUS_CODE_ERROR_THRESHOLD) {
-                if (!isJsonValid(response.toString())) {
-                    return (T) response.toString();
-                }
-                return (T) (new JsonParser().parse(response.toString()));
-            }
-            throw new HttpResponseException(responseCode, response.toString());
+            return ResponseDecoder.decode(ResponseDecoder.read(responseCode, inputStream), responseReader);
         } finally {
             if (inputStream != null) {
                 inputStream.close();
@@ -186,19 +179,47 @@ public class HttpRequest {
         }
     }
 
-    public static <T> T sendJsonPOSTRequest(String requestID, String url, JsonElement requestBody, String version, String apiKey)
+    public static <T> T sendJsonPOSTRequest(String requestID, String url, byte[] requestBody, String version, String apiKey)
+            throws IOException, HttpResponseException {
+        return sendJsonRequest(requestID, url, requestBody, version, apiKey, "POST", null);
+    }
+
+    public static <T> T sendJsonPOSTRequest(String requestID, String url, byte[] requestBody, String version, String apiKey,
+                                            ResponseReader<T> responseReader)
             throws IOException, HttpResponseException {
-        return sendJsonRequest(requestID, url, requestBody, version, apiKey, "POST");
+        return sendJsonRequest(requestID, url, requestBody, version, apiKey, "POST", responseReader);
     }
 
-    public static <T> T sendJsonPUTRequest(String requestID, String url, JsonElement requestBody, String version, String apiKey)
+    public static <T> T sendJsonPUTRequest(String requestID, String url, byte[] requestBody, String version, String apiKey)
             throws IOException, HttpResponseException {
-        return sendJsonRequest(requestID, url, requestBody, version, apiKey, "PUT");
+        return sendJsonRequest(requestID, url, requestBody, version, apiKey, "PUT", null);
     }
 
-    public static <T> T sendJsonDELETERequest(String requestID, String url, JsonElement requestBody, String version, String apiKey)
+    public static <T> T sendJsonDELETERequest(String requestID, String url, byte[] requestBody, String version, String apiKey)
             throws IOException, HttpResponseException {
         return sendJsonRequest(requestID, url, requestBody, version, apiKey,
-                "DELETE");
+                "DELETE", null);
+    }
+
+    public static <T> CompletableFuture<T> sendJsonPOSTRequestAsync(String requestID, String url, byte[] requestBody,
+                                                                    String version, String apiKey) {
+        return sendJsonRequestAsync(requestID, url, requestBody, version, apiKey, "POST", null);
+    }
+
+    public static <T> CompletableFuture<T> sendJsonPOSTRequestAsync(String requestID, String url, byte[] requestBody,
+                                                                    String version, String apiKey,
+                                                                    ResponseReader<T> responseReader) {
+        return sendJsonRequestAsync(requestID, url, requestBody, version, apiKey, "POST", responseReader);
+    }
+
+    public static <T> CompletableFuture<T> sendJsonPUTRequestAsync(String requestID, String url, byte[] requestBody,
+                                                                   String version, String apiKey) {
+        return sendJsonRequestAsync(requestID, url, requestBody, version, apiKey, "PUT", null);
+    }
+
+    public static <T> CompletableFuture<T> sendJsonDELETERequestAsync(String requestID, String url,
+                                                                      byte[] requestBody, String version,
+                                                                      String apiKey) {
+        return sendJsonRequestAsync(requestID, url, requestBody, version, apiKey, "DELETE", null);
     }
 }
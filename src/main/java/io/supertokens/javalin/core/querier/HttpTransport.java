@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.supertokens.javalin.core.querier;
+
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A single HttpClient shared by every request to the core, so that connections are kept alive and reused instead of
+ * being opened per request. With HTTP/1.1 the client opens one connection per concurrent request, so the pool size is
+ * enforced by bounding the number of requests in flight.
+ */
+public class HttpTransport {
+
+    static final int TIMEOUT = 10000;
+
+    private static final String NO_FREE_CONNECTION = "Timed out waiting for a free connection to the SuperTokens core";
+
+    private static volatile HttpClient client = null;
+
+    private static volatile ConnectionLimiter connections = null;
+
+    private static boolean http2 = false;
+
+    private static Executor executor = null;
+
+    private static int maxConnections = 0;
+
+    private HttpTransport() {}
+
+    @TestOnly
+    public static synchronized void reset() {
+        http2 = false;
+        executor = null;
+        maxConnections = 0;
+        client = null;
+        connections = null;
+    }
+
+    public static synchronized void setHttp2(boolean enabled) {
+        http2 = enabled;
+        client = null;
+    }
+
+    public static synchronized void setExecutor(@Nullable Executor httpExecutor) {
+        executor = httpExecutor;
+        client = null;
+    }
+
+    // 0 means no limit
+    public static synchronized void setMaxConnections(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("maxConnections must not be negative");
+        }
+        maxConnections = max;
+        connections = max == 0 ? null : new ConnectionLimiter(max);
+    }
+
+    static HttpClient getClient() {
+        HttpClient result = client;
+        if (result == null) {
+            synchronized (HttpTransport.class) {
+                result = client;
+                if (result == null) {
+                    HttpClient.Builder builder = HttpClient.newBuilder()
+                            .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                            .connectTimeout(Duration.ofMillis(TIMEOUT))
+                            .followRedirects(HttpClient.Redirect.NEVER);
+                    if (executor != null) {
+                        builder.executor(executor);
+                    }
+                    result = builder.build();
+                    client = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    static Response send(java.net.http.HttpRequest request) throws IOException {
+        ConnectionLimiter permits = connections;
+        try {
+            if (permits != null && !permits.acquire()) {
+                throw new IOException(NO_FREE_CONNECTION);
+            }
+            try {
+                HttpResponse<InputStream> response = getClient().send(request, HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream body = response.body()) {
+                    return ResponseDecoder.read(response.statusCode(), body);
+                }
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while querying the SuperTokens core");
+        }
+    }
+
+    static CompletableFuture<Response> sendAsync(java.net.http.HttpRequest request) {
+        ConnectionLimiter permits = connections;
+        if (permits == null) {
+            return doSendAsync(request);
+        }
+        CompletableFuture<Void> permit = permits.acquireAsync();
+        if (!permit.isDone()) {
+            permit.orTimeout(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        return permit
+                .exceptionally(e -> {
+                    throw new CompletionException(new IOException(NO_FREE_CONNECTION));
+                })
+                .thenCompose(ignored -> doSendAsync(request).whenComplete((response, error) -> permits.release()));
+    }
+
+    private static CompletableFuture<Response> doSendAsync(java.net.http.HttpRequest request) {
+        try {
+            return getClient().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                    .thenApply(response -> new Response(response.statusCode(), response.body(),
+                            response.body().length));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    static java.net.http.HttpRequest.Builder newRequest(String url, @Nullable String version, @Nullable String apiKey) {
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(TIMEOUT));
+        if (version != null) {
+            builder.header("cdi-version", version);
+        }
+        if (apiKey != null) {
+            builder.header("api-key", apiKey);
+        }
+        return builder;
+    }
+
+    /*
+     * A semaphore that asynchronous callers can also wait on: they are queued and handed a permit as one is released,
+     * instead of holding a thread while they wait.
+     */
+    private static class ConnectionLimiter {
+        private final Semaphore permits;
+        private final Queue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+
+        ConnectionLimiter(int max) {
+            this.permits = new Semaphore(max);
+        }
+
+        boolean acquire() throws InterruptedException {
+            return this.permits.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        CompletableFuture<Void> acquireAsync() {
+            if (this.waiters.isEmpty() && this.permits.tryAcquire()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            this.waiters.add(waiter);
+            // a permit may have been released before the waiter was queued
+            handOver();
+            return waiter;
+        }
+
+        void release() {
+            this.permits.release();
+            handOver();
+        }
+
+        private void handOver() {
+            while (!this.waiters.isEmpty() && this.permits.tryAcquire()) {
+                CompletableFuture<Void> waiter = this.waiters.poll();
+                // the waiter is gone, or it timed out and no longer needs the permit
+                if (waiter == null || !waiter.complete(null)) {
+                    this.permits.release();
+                    if (waiter == null) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    static class Response {
+        final int statusCode;
+        // only the first length bytes are the body
+        final byte[] body;
+        final int length;
+
+        Response(int statusCode, byte[] body, int length) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.length = length;
+        }
+    }
+}
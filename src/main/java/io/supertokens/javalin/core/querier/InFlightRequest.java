@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/*
+ * A core request that concurrent callers with the same key wait on instead of sending their own. JSON responses are
+ * mutable, so the caller that sent the request keeps the one it got and every other caller gets its own copy, parsed
+ * from the response as it was before the sender returned it, or shared by its ResponseReader. Nothing is copied when
+ * no one else waited.
+ */
+class InFlightRequest {
+
+    private final ConcurrentMap<String, InFlightRequest> requests;
+
+    private final String key;
+
+    @Nullable
+    final ResponseReader<?> responseReader;
+
+    private final CompletableFuture<Supplier<Object>> response = new CompletableFuture<>();
+
+    private int waiting = 0;
+
+    private boolean done = false;
+
+    InFlightRequest(ConcurrentMap<String, InFlightRequest> requests, String key,
+                    @Nullable ResponseReader<?> responseReader) {
+        this.requests = requests;
+        this.key = key;
+        this.responseReader = responseReader;
+    }
+
+    // false if this request has already completed, in which case the caller has to send its own
+    synchronized boolean join() {
+        if (this.done) {
+            return false;
+        }
+        this.waiting++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> getResponse() {
+        return this.response.thenApply(copy -> (T) copy.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    void complete(Object response) {
+        if (!finish()) {
+            return;
+        }
+        if (this.responseReader != null) {
+            this.response.complete(((ResponseReader<Object>) this.responseReader).share(response));
+        } else if (response instanceof JsonElement) {
+            String json = response.toString();
+            this.response.complete(() -> new JsonParser().parse(json));
+        } else {
+            this.response.complete(() -> response);
+        }
+    }
+
+    void fail(Throwable error) {
+        if (finish()) {
+            this.response.completeExceptionally(error);
+        }
+    }
+
+    // returns whether anyone is waiting
+    private boolean finish() {
+        this.requests.remove(this.key, this);
+        synchronized (this) {
+            this.done = true;
+            return this.waiting > 0;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Writes the members of a request body straight to UTF-8 bytes with a Gson JsonWriter, so that they are escaped the
+ * same way as JsonElement.toString. The bytes are written to a per-thread buffer, and toByteArray copies them out
+ * once the body is complete.
+ */
+public class JsonBodyWriter {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private static final int MAX_POOLED_BUFFER_SIZE = 16 * 1024;
+
+    // writes JsonElements the way JsonElement.toString does: nulls are kept and html characters are not escaped
+    private static final Gson gson = new GsonBuilder().serializeNulls().disableHtmlEscaping().create();
+
+    // taken out while a body is being written, so that a body written while writing another one gets its own
+    private static final ThreadLocal<Buffer> pooledBuffer = ThreadLocal.withInitial(Buffer::new);
+
+    private static class Buffer {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+
+        final Writer writer = new OutputStreamWriter(this.bytes, StandardCharsets.UTF_8);
+    }
+
+    private final Buffer buffer;
+
+    private final JsonWriter json;
+
+    private boolean hasMembers = false;
+
+    private JsonBodyWriter() {
+        this.buffer = pooledBuffer.get();
+        pooledBuffer.remove();
+        this.buffer.bytes.reset();
+        this.json = new JsonWriter(this.buffer.writer);
+        try {
+            this.json.beginObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] write(RequestBody body, byte[]... rawMembers) {
+        JsonBodyWriter writer = new JsonBodyWriter();
+        body.writeMembers(writer);
+        try {
+            if (rawMembers.length != 0) {
+                // the raw members go after the ones written by the JsonWriter, so it has to be flushed first
+                writer.json.flush();
+                for (byte[] member : rawMembers) {
+                    if (writer.hasMembers) {
+                        writer.buffer.bytes.write(',');
+                    }
+                    writer.hasMembers = true;
+                    writer.buffer.bytes.write(member);
+                }
+            }
+            writer.json.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toByteArray();
+    }
+
+    // encodes "name":value, to be given to write as a raw member
+    static byte[] encodeMember(String name, JsonElement value) {
+        byte[] object = write(writer -> writer.member(name, value));
+        return Arrays.copyOfRange(object, 1, object.length - 1);
+    }
+
+    public JsonBodyWriter member(String name, String value) {
+        try {
+            writeName(name).value(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public JsonBodyWriter member(String name, boolean value) {
+        try {
+            writeName(name).value(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public JsonBodyWriter member(String name, long value) {
+        try {
+            writeName(name).value(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public JsonBodyWriter member(String name, String[] values) {
+        try {
+            writeName(name).beginArray();
+            for (String value : values) {
+                this.json.value(value);
+            }
+            this.json.endArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public JsonBodyWriter member(String name, JsonElement value) {
+        try {
+            writeName(name);
+            if (value == null) {
+                this.json.nullValue();
+            } else {
+                gson.toJson(value, this.json);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    private JsonWriter writeName(String name) throws IOException {
+        this.hasMembers = true;
+        return this.json.name(name);
+    }
+
+    private byte[] toByteArray() {
+        try {
+            this.json.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] result = this.buffer.bytes.toByteArray();
+        if (result.length <= MAX_POOLED_BUFFER_SIZE) {
+            pooledBuffer.set(this.buffer);
+        }
+        return result;
+    }
+}
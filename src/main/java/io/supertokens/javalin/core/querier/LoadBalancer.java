@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import java.util.List;
+
+/*
+ * Picks the core host each request is sent to. select is called concurrently by every request thread, so
+ * implementations must be thread safe, and should not block.
+ */
+public interface LoadBalancer {
+
+    // hosts is never empty and only holds the hosts that may be used for this request: ejected hosts, and the ones a
+    // request already failed on, are left out
+    <T extends Host> T select(List<T> hosts);
+
+    interface Host {
+
+        String getUrl();
+
+        // requests sent to this host that have not completed yet
+        int getOutstandingRequests();
+
+        // moving average of this host's response time in milliseconds, which jumps up to any slower response right
+        // away and decays back over time. 0 until the first response
+        double getLatency();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Picks two hosts at random and sends the request to the cheaper one, where the cost of a host is its peak sensitive
+ * latency times the number of requests waiting on it. A host that slows down, for example during a GC pause, gets
+ * fewer requests right away, and a host that has not answered yet is only preferred while it is idle.
+ */
+public class PeakEwmaLoadBalancer implements LoadBalancer {
+
+    // cost of a host with requests in flight and no latency measured yet
+    private static final double PENALTY = Integer.MAX_VALUE;
+
+    @Override
+    public <T extends Host> T select(List<T> hosts) {
+        int size = hosts.size();
+        if (size == 1) {
+            return hosts.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        T a = hosts.get(first);
+        T b = hosts.get(second);
+        return getCost(a) <= getCost(b) ? a : b;
+    }
+
+    private static double getCost(Host host) {
+        int outstanding = host.getOutstandingRequests();
+        double latency = host.getLatency();
+        if (latency == 0 && outstanding != 0) {
+            return PENALTY + outstanding;
+        }
+        return latency * (outstanding + 1);
+    }
+}
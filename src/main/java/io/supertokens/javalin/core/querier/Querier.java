@@ -23,27 +23,92 @@ import io.supertokens.javalin.core.DeviceInfo;
 import io.supertokens.javalin.core.exception.GeneralException;
 import io.supertokens.javalin.core.Utils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpConnectTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class Querier {
 
     private static Querier instance;
 
-    private final List<String> hosts;
+    // POSTs that can safely be sent to another host when the first one may already have received them
+    private static final Set<String> IDEMPOTENT_POST_PATHS = Set.of("/session/verify", "/handshake", "/session/remove");
+
+    /*
+     * Reads whose response does not depend on how many times they are sent. Concurrent identical ones share a single
+     * request, and they may be sent to a second host when the first one is slow.
+     */
+    private static final String READ_POST_PATH = "/session/verify";
+    private static final Set<String> READ_GET_PATHS = Set.of("/session/data", "/jwt/data", "/session/user");
+
+    private static final byte[] DRIVER_MEMBER = getDriverMember();
+
+    @Nullable
+    private static volatile EncodedFrontendSDKs encodedFrontendSDKs = null;
+
+    private final List<CoreHost> hosts;
 
     private String apiKey;
 
-    private String apiVersion = null;
+    private volatile String apiVersion = null;
+
+    // true while apiVersion is the one read from a handshake snapshot and not yet negotiated with the core
+    private volatile boolean apiVersionRestored = false;
 
-    private int lastTriedIndex = 0;
+    private static volatile LoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+
+    // null while hedging is off
+    @Nullable
+    private static volatile Hedging hedging = null;
 
     private final Set<String> hostsAliveForTesting = new HashSet<>();
 
+    private final ConcurrentMap<String, InFlightRequest> inFlightRequests = new ConcurrentHashMap<>();
+
     @TestOnly
     public static void reset() {
         instance = null;
+        loadBalancer = new RoundRobinLoadBalancer();
+        hedging = null;
+    }
+
+    public static void setLoadBalancer(LoadBalancer loadBalancer) {
+        Querier.loadBalancer = loadBalancer;
+    }
+
+    /*
+     * Hedged reads are sent to a second host when the first one has not answered within the given percentile of
+     * recent response times, for at most maxHedgeRate of all hedged reads.
+     */
+    public static void setHedging(double percentile, double maxHedgeRate) {
+        Querier.hedging = new Hedging(percentile, maxHedgeRate);
+    }
+
+    // number of reads that were sent to a second host
+    public static long getHedgesFired() {
+        Hedging hedging = Querier.hedging;
+        return hedging == null ? 0 : hedging.fired.sum();
+    }
+
+    // number of reads whose response came from the second host
+    public static long getHedgesWon() {
+        Hedging hedging = Querier.hedging;
+        return hedging == null ? 0 : hedging.won.sum();
     }
 
     @TestOnly
@@ -52,7 +117,7 @@ public class Querier {
     }
 
     private Querier(String config, String apiKey) {
-        this.hosts = new ArrayList<>();
+        List<CoreHost> hosts = new ArrayList<>();
         String[] splitted = config.split(";");
         for (String instance : splitted) {
             if (instance.equals("")) {
@@ -61,14 +126,14 @@ public class Querier {
             if (instance.charAt(instance.length() - 1) == '/') {
                 instance = instance.substring(0, instance.length() - 1);
             }
-            this.hosts.add(instance);
+            hosts.add(new CoreHost(instance));
         }
+        this.hosts = Collections.unmodifiableList(hosts);
         this.apiKey = apiKey;
     }
 
     private Querier() {
-        this.hosts = new ArrayList<>();
-        this.hosts.add("http://localhost:3567");
+        this.hosts = Collections.singletonList(new CoreHost("http://localhost:3567"));
     }
 
     public static Querier getInstance() {
@@ -82,6 +147,10 @@ public class Querier {
         return instance;
     }
 
+    public static boolean isInitialised() {
+        return instance != null;
+    }
+
     public synchronized static void initInstance(String config, String apiKey) {
         if (instance == null) {
             instance = new Querier(config, apiKey);
@@ -96,84 +165,554 @@ public class Querier {
             if (this.apiVersion != null) {
                 return apiVersion;
             }
-            JsonObject response = sendRequestHelper("/apiversion",
-                    url -> HttpRequest.sendGETRequest("apiversion", url, null, null, this.apiKey),
-                    this.hosts.size());
-            assert response != null;
-            JsonArray cdiSupportedByServerJson = response.getAsJsonArray("versions");
-            String[] cdiSupportedByServer = new String[cdiSupportedByServerJson.size()];
-            for (int i = 0; i < cdiSupportedByServerJson.size(); i++) {
-                cdiSupportedByServer[i] = cdiSupportedByServerJson.get(i).getAsString();
-            }
-            String supportedVersion = Utils
-                    .getLargestVersionFromIntersection(cdiSupportedByServer, Constants.CDI_SUPPORTED);
-            if (supportedVersion == null) {
-                throw new GeneralException(
-                        "The running SuperTokens core version is not compatible with this Javalin SDK. Please visit https://supertokens.io/docs/community/compatibility to find the right versions");
-            }
+            String supportedVersion = negotiateAPIVersion();
             this.apiVersion = supportedVersion;
             return supportedVersion;
         }
     }
 
+    public String getHosts() {
+        StringJoiner result = new StringJoiner(";");
+        for (CoreHost host : this.hosts) {
+            result.add(host.url);
+        }
+        return result.toString();
+    }
+
+    public void restoreAPIVersion(String version) {
+        synchronized (Querier.class) {
+            if (this.apiVersion == null && Arrays.asList(Constants.CDI_SUPPORTED).contains(version)) {
+                this.apiVersion = version;
+                this.apiVersionRestored = true;
+            }
+        }
+    }
+
+    public void revalidateAPIVersion() throws GeneralException {
+        if (!this.apiVersionRestored) {
+            return;
+        }
+        String supportedVersion = negotiateAPIVersion();
+        synchronized (Querier.class) {
+            this.apiVersion = supportedVersion;
+            this.apiVersionRestored = false;
+        }
+    }
+
+    public CompletableFuture<String> getAPIVersionAsync() {
+        String version = this.apiVersion;
+        if (version != null) {
+            return CompletableFuture.completedFuture(version);
+        }
+        return this.<JsonObject>sendRequestHelperAsync("/apiversion",
+                url -> HttpRequest.sendGETRequestAsync("apiversion", url, null, null, this.apiKey), true)
+                .thenApply(response -> {
+                    try {
+                        String supportedVersion = getSupportedAPIVersion(response);
+                        synchronized (Querier.class) {
+                            if (this.apiVersion == null) {
+                                this.apiVersion = supportedVersion;
+                            }
+                            return this.apiVersion;
+                        }
+                    } catch (GeneralException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    private String negotiateAPIVersion() throws GeneralException {
+        JsonObject response = sendRequestHelper("/apiversion",
+                url -> HttpRequest.sendGETRequest("apiversion", url, null, null, this.apiKey), true);
+        return getSupportedAPIVersion(response);
+    }
+
+    private static String getSupportedAPIVersion(JsonObject response) throws GeneralException {
+        assert response != null;
+        JsonArray cdiSupportedByServerJson = response.getAsJsonArray("versions");
+        String[] cdiSupportedByServer = new String[cdiSupportedByServerJson.size()];
+        for (int i = 0; i < cdiSupportedByServerJson.size(); i++) {
+            cdiSupportedByServer[i] = cdiSupportedByServerJson.get(i).getAsString();
+        }
+        String supportedVersion = Utils
+                .getLargestVersionFromIntersection(cdiSupportedByServer, Constants.CDI_SUPPORTED);
+        if (supportedVersion == null) {
+            throw new GeneralException(
+                    "The running SuperTokens core version is not compatible with this Javalin SDK. Please visit https://supertokens.io/docs/community/compatibility to find the right versions");
+        }
+        return supportedVersion;
+    }
+
     public <T> T sendPostRequest(String requestID, String path, JsonObject body) throws GeneralException {
+        return sendPostRequest(requestID, path, RequestBody.of(body));
+    }
+
+    public <T> T sendPostRequest(String requestID, String path, RequestBody body) throws GeneralException {
+        return sendPostRequest(requestID, path, body, null);
+    }
+
+    // the response is decoded by responseReader, or into a JsonElement or String when it is null
+    public <T> T sendPostRequest(String requestID, String path, RequestBody body,
+                                 @Nullable ResponseReader<T> responseReader) throws GeneralException {
+        byte[] encoded = encode(path, body);
+        if (!path.equals(READ_POST_PATH)) {
+            return sendRequestHelper(path, url -> HttpRequest.sendJsonPOSTRequest(requestID, url, encoded,
+                    getAPIVersion(), this.apiKey, responseReader), IDEMPOTENT_POST_PATHS.contains(path));
+        }
+        return coalesce(getPostRequestKey(path, encoded), responseReader, () -> {
+            if (hedging != null) {
+                return waitFor(sendHedgedRequestAsync(path,
+                        getAsyncPostRequest(requestID, encoded, responseReader)));
+            }
+            return sendRequestHelper(path, url -> HttpRequest.sendJsonPOSTRequest(requestID, url, encoded,
+                    getAPIVersion(), this.apiKey, responseReader), true);
+        });
+    }
+
+    /*
+     * The frontendSDK and driver members that some paths carry are encoded ahead of time: the driver once, and the
+     * frontend SDKs whenever DeviceInfo changes.
+     */
+    private static byte[] encode(String path, RequestBody body) {
         if (path.equals("/session") || path.equals("/session/verify") ||
                 path.equals("/session/refresh") || path.equals("/handshake")) {
-            DeviceInfo.Device[] devices = DeviceInfo.getInstance().getFrontendSDKs();
+            return JsonBodyWriter.write(body, getFrontendSDKMember(), DRIVER_MEMBER);
+        }
+        return JsonBodyWriter.write(body);
+    }
 
-            JsonArray frontendSDK = new JsonArray();
-            for(DeviceInfo.Device d : devices) {
-                JsonObject device = new JsonObject();
-                device.addProperty("name", d.name);
-                device.addProperty("version", d.version);
-                frontendSDK.add(device);
-            }
+    private static byte[] getDriverMember() {
+        JsonObject driver = new JsonObject();
+        driver.addProperty("name", "javalin");
+        driver.addProperty("version", Constants.VERSION);
+        return JsonBodyWriter.encodeMember("driver", driver);
+    }
+
+    private static byte[] getFrontendSDKMember() {
+        EncodedFrontendSDKs current = encodedFrontendSDKs;
+        // read before the devices, so that a device added in between gets them encoded again next time
+        long version = DeviceInfo.getVersion();
+        if (current != null && current.version == version) {
+            return current.member;
+        }
+        JsonArray frontendSDK = new JsonArray();
+        for (DeviceInfo.Device d : DeviceInfo.getInstance().getFrontendSDKs()) {
+            JsonObject device = new JsonObject();
+            device.addProperty("name", d.name);
+            device.addProperty("version", d.version);
+            frontendSDK.add(device);
+        }
+        byte[] member = JsonBodyWriter.encodeMember("frontendSDK", frontendSDK);
+        encodedFrontendSDKs = new EncodedFrontendSDKs(version, member);
+        return member;
+    }
 
-            JsonObject driver = new JsonObject();
-            driver.addProperty("name", "javalin");
-            driver.addProperty("version", Constants.VERSION);
+    private static class EncodedFrontendSDKs {
+        final long version;
+        final byte[] member;
 
-            body.add("frontendSDK", frontendSDK);
-            body.add("driver", driver);
+        EncodedFrontendSDKs(long version, byte[] member) {
+            this.version = version;
+            this.member = member;
         }
-        return sendRequestHelper(path, url -> HttpRequest.sendJsonPOSTRequest(requestID, url, body, getAPIVersion(), this.apiKey), this.hosts.size());
     }
 
     public <T> T sendDeleteRequest(String requestID, String path, JsonObject body) throws GeneralException {
-        return sendRequestHelper(path, url -> HttpRequest.sendJsonDELETERequest(requestID, url, body, getAPIVersion(), this.apiKey), this.hosts.size());
+        return sendDeleteRequest(requestID, path, RequestBody.of(body));
+    }
+
+    public <T> T sendDeleteRequest(String requestID, String path, RequestBody body) throws GeneralException {
+        byte[] encoded = encode(path, body);
+        return sendRequestHelper(path, url -> HttpRequest.sendJsonDELETERequest(requestID, url, encoded,
+                getAPIVersion(), this.apiKey), true);
     }
 
     public <T> T sendGetRequest(String requestID, String path, Map<String, String> params) throws GeneralException {
-        return sendRequestHelper(path, url -> HttpRequest.sendGETRequest(requestID, url, params, getAPIVersion(), this.apiKey), this.hosts.size());
+        if (!READ_GET_PATHS.contains(path)) {
+            return sendRequestHelper(path, url -> HttpRequest.sendGETRequest(requestID, url, params,
+                    getAPIVersion(), this.apiKey), true);
+        }
+        return coalesce(getGetRequestKey(path, params), null, () -> {
+            if (hedging != null) {
+                return waitFor(sendHedgedRequestAsync(path, getAsyncGetRequest(requestID, params)));
+            }
+            return sendRequestHelper(path, url -> HttpRequest.sendGETRequest(requestID, url, params,
+                    getAPIVersion(), this.apiKey), true);
+        });
     }
 
     public <T> T sendPutRequest(String requestID, String path, JsonObject body) throws GeneralException {
-        return sendRequestHelper(path, url -> HttpRequest.sendJsonPUTRequest(requestID, url, body, getAPIVersion(), this.apiKey), this.hosts.size());
+        return sendPutRequest(requestID, path, RequestBody.of(body));
+    }
+
+    public <T> T sendPutRequest(String requestID, String path, RequestBody body) throws GeneralException {
+        byte[] encoded = encode(path, body);
+        return sendRequestHelper(path, url -> HttpRequest.sendJsonPUTRequest(requestID, url, encoded,
+                getAPIVersion(), this.apiKey), true);
+    }
+
+    public <T> CompletableFuture<T> sendPostRequestAsync(String requestID, String path, JsonObject body) {
+        return sendPostRequestAsync(requestID, path, RequestBody.of(body));
+    }
+
+    public <T> CompletableFuture<T> sendPostRequestAsync(String requestID, String path, RequestBody body) {
+        return sendPostRequestAsync(requestID, path, body, null);
+    }
+
+    public <T> CompletableFuture<T> sendPostRequestAsync(String requestID, String path, RequestBody body,
+                                                         @Nullable ResponseReader<T> responseReader) {
+        byte[] encoded = encode(path, body);
+        if (!path.equals(READ_POST_PATH)) {
+            return sendRequestHelperAsync(path, getAsyncPostRequest(requestID, encoded, responseReader),
+                    IDEMPOTENT_POST_PATHS.contains(path));
+        }
+        return coalesceAsync(getPostRequestKey(path, encoded), responseReader,
+                () -> sendHedgedRequestAsync(path, getAsyncPostRequest(requestID, encoded, responseReader)));
+    }
+
+    private <T> AsyncRequest<T> getAsyncPostRequest(String requestID, byte[] body,
+                                                    @Nullable ResponseReader<T> responseReader) {
+        return url -> getAPIVersionAsync().thenCompose(version ->
+                HttpRequest.sendJsonPOSTRequestAsync(requestID, url, body, version, this.apiKey, responseReader));
+    }
+
+    public <T> CompletableFuture<T> sendDeleteRequestAsync(String requestID, String path, JsonObject body) {
+        return sendDeleteRequestAsync(requestID, path, RequestBody.of(body));
+    }
+
+    public <T> CompletableFuture<T> sendDeleteRequestAsync(String requestID, String path, RequestBody body) {
+        byte[] encoded = encode(path, body);
+        return sendRequestHelperAsync(path, url -> getAPIVersionAsync().thenCompose(version ->
+                HttpRequest.sendJsonDELETERequestAsync(requestID, url, encoded, version, this.apiKey)), true);
+    }
+
+    public <T> CompletableFuture<T> sendGetRequestAsync(String requestID, String path, Map<String, String> params) {
+        if (!READ_GET_PATHS.contains(path)) {
+            return sendRequestHelperAsync(path, getAsyncGetRequest(requestID, params), true);
+        }
+        return coalesceAsync(getGetRequestKey(path, params), null,
+                () -> sendHedgedRequestAsync(path, getAsyncGetRequest(requestID, params)));
     }
 
+    private <T> AsyncRequest<T> getAsyncGetRequest(String requestID, Map<String, String> params) {
+        return url -> getAPIVersionAsync().thenCompose(version ->
+                HttpRequest.sendGETRequestAsync(requestID, url, params, version, this.apiKey));
+    }
+
+    public <T> CompletableFuture<T> sendPutRequestAsync(String requestID, String path, JsonObject body) {
+        return sendPutRequestAsync(requestID, path, RequestBody.of(body));
+    }
+
+    public <T> CompletableFuture<T> sendPutRequestAsync(String requestID, String path, RequestBody body) {
+        byte[] encoded = encode(path, body);
+        return sendRequestHelperAsync(path, url -> getAPIVersionAsync().thenCompose(version ->
+                HttpRequest.sendJsonPUTRequestAsync(requestID, url, encoded, version, this.apiKey)), true);
+    }
+
+    // the encoded body is the canonical form: identical requests are encoded by the same code
+    private static String getPostRequestKey(String path, byte[] body) {
+        return "POST " + path + " " + new String(body, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String getGetRequestKey(String path, @Nullable Map<String, String> params) {
+        return "GET " + HttpRequest.getURLWithParams(path, params == null ? null : new TreeMap<>(params));
+    }
+
+    /*
+     * The first caller with a given key sends the request, and the ones that come while it is in flight get a copy of
+     * its response, or the same error. Requests whose responses are decoded differently are not shared.
+     */
+    private <T> T coalesce(String key, @Nullable ResponseReader<T> responseReader, BlockingRequest<T> request)
+            throws GeneralException {
+        while (true) {
+            InFlightRequest created = new InFlightRequest(this.inFlightRequests, key, responseReader);
+            InFlightRequest existing = this.inFlightRequests.putIfAbsent(key, created);
+            if (existing != null && existing.responseReader != responseReader) {
+                return request.send();
+            }
+            if (existing == null) {
+                try {
+                    T response = request.send();
+                    created.complete(response);
+                    return response;
+                } catch (GeneralException | RuntimeException | Error e) {
+                    created.fail(e);
+                    throw e;
+                }
+            }
+            if (existing.join()) {
+                return waitFor(existing.getResponse());
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> coalesceAsync(String key, @Nullable ResponseReader<T> responseReader,
+                                                   Supplier<CompletableFuture<T>> request) {
+        while (true) {
+            InFlightRequest created = new InFlightRequest(this.inFlightRequests, key, responseReader);
+            InFlightRequest existing = this.inFlightRequests.putIfAbsent(key, created);
+            if (existing != null && existing.responseReader != responseReader) {
+                return request.get();
+            }
+            if (existing == null) {
+                CompletableFuture<T> sent;
+                try {
+                    sent = request.get();
+                } catch (RuntimeException e) {
+                    created.fail(e);
+                    return CompletableFuture.failedFuture(e);
+                } catch (Error e) {
+                    created.fail(e);
+                    throw e;
+                }
+                CompletableFuture<T> result = new CompletableFuture<>();
+                sent.whenComplete((response, error) -> {
+                    if (error == null) {
+                        created.complete(response);
+                        result.complete(response);
+                    } else {
+                        created.fail(error);
+                        result.completeExceptionally(error);
+                    }
+                });
+                return result;
+            }
+            if (existing.join()) {
+                return existing.getResponse();
+            }
+        }
+    }
+
+    /*
+     * Hosts are tried in turn, skipping ejected ones and the ones already tried for this request. A host that could
+     * not be connected to never received the request, so the next one is always tried. After timeouts, resets and
+     * 5xx responses the request may have been processed, so that is only done for idempotent requests. When every
+     * host is ejected the request is still sent, to the host that is due to be re-admitted first.
+     */
     @SuppressWarnings("unchecked")
-    private <T> T sendRequestHelper(String path, ActualRequest request, int numberOfTries) throws GeneralException {
-        if (numberOfTries == 0) {
-            throw new GeneralException("No SuperTokens core available to query");
+    private <T> T sendRequestHelper(String path, ActualRequest request, boolean idempotent) throws GeneralException {
+        List<CoreHost> tried = new ArrayList<>(1);
+        while (true) {
+            CoreHost host = pickHost(tried);
+            if (host == null) {
+                throw new GeneralException("No SuperTokens core available to query");
+            }
+            tried.add(host);
+            long startTime = host.onRequestStart();
+            boolean responded = false;
+            try {
+                T response = (T) request.handle(host.url + path);
+                responded = true;
+                onSuccess(host);
+                return response;
+            } catch (GeneralException e) {
+                throw e;
+            } catch (Exception e) {
+                if (!onFailure(host, e, idempotent)) {
+                    throw new GeneralException(e);
+                }
+            } finally {
+                host.onRequestEnd(startTime, responded);
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> sendRequestHelperAsync(String path, AsyncRequest<T> request, boolean idempotent) {
+        return sendRequestHelperAsync(path, request, idempotent, new ArrayList<>(1));
+    }
+
+    private <T> CompletableFuture<T> sendRequestHelperAsync(String path, AsyncRequest<T> request, boolean idempotent,
+                                                            List<CoreHost> tried) {
+        CoreHost host = pickHost(tried);
+        if (host == null) {
+            return CompletableFuture.failedFuture(new GeneralException("No SuperTokens core available to query"));
         }
-        String currentHost = this.hosts.get(this.lastTriedIndex);
-        this.lastTriedIndex = (this.lastTriedIndex + 1) % this.hosts.size();
+        tried.add(host);
+        long startTime = host.onRequestStart();
+        CompletableFuture<T> response;
         try {
-            T response = (T) request.handle(currentHost + path);
-            if (Constants.IS_TESTING) {
-                this.hostsAliveForTesting.add(currentHost);
+            response = request.handle(host.url + path);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.handle((result, error) -> {
+            host.onRequestEnd(startTime, error == null);
+            if (error == null) {
+                onSuccess(host);
+                return CompletableFuture.completedFuture(result);
+            }
+            Throwable cause = Utils.unwrapFutureException(error);
+            if (!(cause instanceof Exception)) {
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+            if (!(cause instanceof GeneralException) && onFailure(host, (Exception) cause, idempotent)) {
+                return this.sendRequestHelperAsync(path, request, idempotent, tried);
             }
-            return response;
-        } catch (Exception e) {
-            if (e.getMessage().contains("Connection refused")) {
-                return sendRequestHelper(path, request, numberOfTries - 1);
+            return CompletableFuture.<T>failedFuture(Utils.toGeneralException((Exception) cause));
+        }).thenCompose(future -> future);
+    }
+
+    /*
+     * If the first host has not answered after the hedge delay, the request is also sent to another host, and the
+     * first successful response is used. The request only fails once every attempt that was sent has failed.
+     */
+    private <T> CompletableFuture<T> sendHedgedRequestAsync(String path, AsyncRequest<T> request) {
+        Hedging hedging = Querier.hedging;
+        if (hedging == null || this.hosts.size() < 2) {
+            return sendRequestHelperAsync(path, request, true);
+        }
+        hedging.onRequest();
+        // shared, so that neither attempt is sent to a host the other one already used
+        List<CoreHost> tried = Collections.synchronizedList(new ArrayList<>(2));
+        long startTime = System.nanoTime();
+        CompletableFuture<T> primary = sendRequestHelperAsync(path, request, true, tried);
+        primary.thenRun(() -> hedging.onResponse(System.nanoTime() - startTime));
+        long delay = hedging.getDelay();
+        if (delay < 0 || primary.isDone()) {
+            return primary;
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        primary.whenComplete((response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
             }
+        });
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (result.isDone() || !hedging.tryHedge()) {
+                return;
+            }
+            pending.incrementAndGet();
+            sendRequestHelperAsync(path, request, true, tried).whenComplete((response, error) -> {
+                if (error == null) {
+                    if (result.complete(response)) {
+                        hedging.won.increment();
+                    }
+                } else if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(error);
+                }
+            });
+        });
+        return result;
+    }
+
+    private static <T> T waitFor(CompletableFuture<T> future) throws GeneralException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new GeneralException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = Utils.unwrapFutureException(e);
+            if (cause instanceof Exception) {
+                throw Utils.toGeneralException((Exception) cause);
+            }
+            throw new GeneralException(e);
+        }
+    }
+
+    /*
+     * null once every host was tried. The load balancer is given all the hosts, without copying them, unless some have
+     * to be left out.
+     */
+    @Nullable
+    private CoreHost pickHost(List<CoreHost> tried) {
+        long now = System.currentTimeMillis();
+        List<CoreHost> candidates = null;
+        for (int i = 0; i < this.hosts.size(); i++) {
+            CoreHost host = this.hosts.get(i);
+            if (tried.contains(host) || !host.isAvailable(now)) {
+                if (candidates == null) {
+                    candidates = new ArrayList<>(this.hosts.subList(0, i));
+                }
+            } else if (candidates != null) {
+                candidates.add(host);
+            }
+        }
+        if (candidates == null) {
+            candidates = this.hosts;
+        }
+        LoadBalancer loadBalancer = Querier.loadBalancer;
+        while (!candidates.isEmpty()) {
+            CoreHost host = loadBalancer.select(candidates);
+            if (host.tryAcquire(now)) {
+                return host;
+            }
+            // another request took the probe of this host
+            if (candidates == this.hosts) {
+                candidates = new ArrayList<>(this.hosts);
+            }
+            if (!candidates.remove(host)) {
+                break;
+            }
         }
+        return pickEjectedHost(tried);
+    }
+
+    /*
+     * When no host can be used, the one not tried yet whose ejection ends first is used anyway: with a single core, or
+     * when every core failed together, failing requests without sending them would only keep the outage going.
+     */
+    @Nullable
+    private CoreHost pickEjectedHost(List<CoreHost> tried) {
+        CoreHost result = null;
+        for (CoreHost host : this.hosts) {
+            if (!tried.contains(host) && (result == null || host.getEjectedUntil() < result.getEjectedUntil())) {
+                result = host;
+            }
+        }
+        return result;
+    }
+
+    private void onSuccess(CoreHost host) {
+        host.onSuccess();
+        if (Constants.IS_TESTING) {
+            this.hostsAliveForTesting.add(host.url);
+        }
+    }
+
+    // returns whether the request should be sent to another host
+    private static boolean onFailure(CoreHost host, Exception e, boolean idempotent) {
+        if (isConnectFailure(e)) {
+            host.onFailure();
+            return true;
+        }
+        if ((e instanceof HttpResponseException && ((HttpResponseException) e).statusCode >= 500) ||
+                (e instanceof IOException && !isInterrupted(e))) {
+            host.onFailure();
+            return idempotent;
+        }
+        if (e instanceof HttpResponseException) {
+            // the host answered, it just did not like the request
+            host.onSuccess();
+        }
+        return false;
+    }
+
+    private static boolean isConnectFailure(Exception e) {
+        return e instanceof ConnectException || e instanceof HttpConnectTimeoutException ||
+                (e.getMessage() != null && e.getMessage().contains("Connection refused"));
+    }
+
+    private static boolean isInterrupted(Exception e) {
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    @FunctionalInterface
+    private interface BlockingRequest<T> {
+        T send() throws GeneralException;
     }
 
     @FunctionalInterface
     public interface ActualRequest<T> {
         T handle(@NotNull String url) throws Exception;
     }
+
+    @FunctionalInterface
+    public interface AsyncRequest<T> {
+        CompletableFuture<T> handle(@NotNull String url);
+    }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/*
+ * The JSON object sent to the core, written member by member instead of being built as a JsonObject first.
+ */
+@FunctionalInterface
+public interface RequestBody {
+
+    void writeMembers(JsonBodyWriter writer);
+
+    static RequestBody of(JsonObject body) {
+        return writer -> {
+            for (Map.Entry<String, JsonElement> member : body.entrySet()) {
+                writer.member(member.getKey(), member.getValue());
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Turns the bytes of a core response into what HttpRequest returns. Objects and arrays are parsed straight from the
+ * bytes with a streaming reader. Anything else is returned as text: that is decided by looking at the first character,
+ * so a response is parsed at most once.
+ */
+class ResponseDecoder {
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> buffer = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+    private ResponseDecoder() {}
+
+    /*
+     * Reads the whole body into this thread's buffer, so the returned response is only valid until the next call to
+     * read on the same thread.
+     */
+    static HttpTransport.Response read(int statusCode, InputStream in) throws IOException {
+        byte[] buf = ResponseDecoder.buffer.get();
+        int length = 0;
+        if (in != null) {
+            while (true) {
+                if (length == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int read = in.read(buf, length, buf.length - length);
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+            }
+            if (buf.length <= MAX_POOLED_BUFFER_SIZE) {
+                ResponseDecoder.buffer.set(buf);
+            }
+        }
+        return new HttpTransport.Response(statusCode, buf, length);
+    }
+
+    /*
+     * Without a reader, objects and arrays are returned as a JsonElement and anything else, including malformed JSON,
+     * as a String. With one, the response has to be a JSON object or array.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T decode(HttpTransport.Response response, @Nullable ResponseReader<T> responseReader)
+            throws IOException, HttpResponseException {
+        byte[] body = response.body;
+        int length = response.length;
+        if (response.statusCode >= HttpRequest.STATUS_CODE_ERROR_THRESHOLD) {
+            throw new HttpResponseException(response.statusCode, new String(body, 0, length, StandardCharsets.UTF_8));
+        }
+        int start = 0;
+        while (start < length && isWhitespace(body[start])) {
+            start++;
+        }
+        if (start == length || (body[start] != '{' && body[start] != '[')) {
+            if (responseReader != null) {
+                throw new IOException("Expected a JSON response from the SuperTokens core");
+            }
+            return (T) toText(body, length);
+        }
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body, start,
+                length - start), StandardCharsets.UTF_8))) {
+            T result = responseReader == null ? (T) new JsonParser().parse(reader) : responseReader.read(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected content after the JSON response of the SuperTokens core");
+            }
+            return result;
+        } catch (IOException e) {
+            if (responseReader == null) {
+                return (T) toText(body, length);
+            }
+            throw e;
+        } catch (JsonParseException | IllegalStateException | NumberFormatException e) {
+            if (responseReader == null) {
+                return (T) toText(body, length);
+            }
+            throw new IOException("Invalid JSON response from the SuperTokens core", e);
+        }
+    }
+
+    // malformed JSON is returned as text too, as it was before responses were parsed straight from the bytes
+    private static String toText(byte[] body, int length) {
+        return new String(body, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
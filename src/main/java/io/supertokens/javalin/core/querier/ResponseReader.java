@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/*
+ * Decodes the JSON response of the core straight from its bytes into T, instead of going through a JsonObject.
+ */
+@FunctionalInterface
+public interface ResponseReader<T> {
+
+    T read(JsonReader reader) throws IOException;
+
+    /*
+     * When concurrent identical requests share a response, this is called on the response of the caller that sent it,
+     * before that caller gets it back. Every other caller gets the result of calling get(), so if T can be changed,
+     * each call must return a separate copy.
+     */
+    default Supplier<T> share(T response) {
+        return () -> response;
+    }
+}
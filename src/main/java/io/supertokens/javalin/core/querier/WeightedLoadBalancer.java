@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Round robin where a host with weight n gets n consecutive requests per round. Weights are keyed by host url, as
+ * given to withHosts, and hosts without one have a weight of 1.
+ */
+public class WeightedLoadBalancer implements LoadBalancer {
+
+    private final Map<String, Integer> weights;
+
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    public WeightedLoadBalancer(Map<String, Integer> weights) {
+        this.weights = new HashMap<>();
+        for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+            if (weight.getValue() == null || weight.getValue() <= 0) {
+                throw new IllegalArgumentException("Weight of " + weight.getKey() + " must be positive");
+            }
+            String url = weight.getKey();
+            if (url.endsWith("/")) {
+                url = url.substring(0, url.length() - 1);
+            }
+            this.weights.put(url, weight.getValue());
+        }
+    }
+
+    @Override
+    public <T extends Host> T select(List<T> hosts) {
+        int total = 0;
+        for (T host : hosts) {
+            total += getWeight(host);
+        }
+        int position = Math.floorMod(this.next.getAndIncrement(), total);
+        for (T host : hosts) {
+            position -= getWeight(host);
+            if (position < 0) {
+                return host;
+            }
+        }
+        return hosts.get(hosts.size() - 1);
+    }
+
+    private int getWeight(Host host) {
+        return this.weights.getOrDefault(host.getUrl(), 1);
+    }
+}
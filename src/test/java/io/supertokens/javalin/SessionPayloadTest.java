@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin;
+
+import com.google.gson.JsonObject;
+import io.supertokens.javalin.core.PayloadCodec;
+import io.supertokens.javalin.core.PayloadCodecs;
+import io.supertokens.javalin.core.SessionFunctions;
+import io.supertokens.javalin.core.exception.GeneralException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SessionPayloadTest {
+
+    static class Claims {
+        String role;
+    }
+
+    static class StrictCodec implements PayloadCodec<Claims> {
+
+        final AtomicInteger decodes = new AtomicInteger(0);
+
+        @Override
+        public Claims decode(JsonObject json) {
+            this.decodes.incrementAndGet();
+            if (!json.has("role")) {
+                throw new IllegalArgumentException("role missing");
+            }
+            Claims result = new Claims();
+            result.role = json.get("role").getAsString();
+            return result;
+        }
+
+        @Override
+        public JsonObject encode(Claims value) {
+            JsonObject result = new JsonObject();
+            result.addProperty("role", value.role);
+            return result;
+        }
+    }
+
+    private static Session newSession(JsonObject payload) {
+        return new Session("accessToken", "sessionHandle", "userId", payload, null);
+    }
+
+    @Before
+    public void beforeEach() {
+        PayloadCodecs.reset();
+    }
+
+    @After
+    public void afterEach() {
+        PayloadCodecs.reset();
+    }
+
+    @Test
+    public void registeredTypeIsDecodedWhenTheSessionIsCreated() throws Exception {
+        StrictCodec codec = new StrictCodec();
+        SessionFunctions.configJwtPayloadType(Claims.class, codec);
+        JsonObject payload = new JsonObject();
+        payload.addProperty("role", "admin");
+
+        Session session = newSession(payload);
+        assert (codec.decodes.get() == 1);
+        Claims claims = session.getJWTPayload(Claims.class);
+        assert (claims.role.equals("admin"));
+        assert (session.getJWTPayload(Claims.class) == claims);
+        assert (codec.decodes.get() == 1);
+    }
+
+    @Test
+    public void decodingFailureIsOnlyThrownWhenTheTypedPayloadIsRead() throws Exception {
+        StrictCodec codec = new StrictCodec();
+        SessionFunctions.configJwtPayloadType(Claims.class, codec);
+        JsonObject payload = new JsonObject();
+        payload.addProperty("name", "written before the type was registered");
+
+        Session session = newSession(payload);
+        assert (session.getJWTPayload().get("name").equals("written before the type was registered"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                session.getJWTPayload(Claims.class);
+                assert (false);
+            } catch (GeneralException e) {
+                assert (e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+        // the stored failure is thrown instead of decoding again
+        assert (codec.decodes.get() == 1);
+    }
+
+    @Test
+    public void withoutARegisteredTypeNothingIsDecodedUpFront() throws Exception {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("role", "admin");
+        Session session = newSession(payload);
+        assert (session.getJWTPayload(Claims.class).role.equals("admin"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core;
+
+import com.google.gson.JsonObject;
+import io.supertokens.javalin.Constants;
+import io.supertokens.javalin.core.informationHolders.JwtSigningKey;
+import io.supertokens.javalin.core.querier.Querier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class HandshakeSnapshotTest {
+
+    // nothing listens on this port, so the background handshake after a restore fails without side effects
+    private static final String HOSTS = "http://localhost:1";
+
+    private Path directory;
+
+    private Path file;
+
+    @Before
+    public void beforeEach() throws Exception {
+        HandshakeInfo.reset();
+        Querier.reset();
+        this.directory = Files.createTempDirectory("snapshot");
+        this.file = this.directory.resolve("handshake.json");
+        initQuerier(HOSTS);
+        HandshakeSnapshot.setFile(this.file.toString());
+    }
+
+    @After
+    public void afterEach() throws Exception {
+        HandshakeInfo.reset();
+        Querier.reset();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.forEach(path -> path.toFile().delete());
+        }
+        Files.deleteIfExists(this.directory);
+    }
+
+    private static void initQuerier(String hosts) {
+        Querier.initInstance(hosts, null);
+        Querier.getInstance().restoreAPIVersion(Constants.CDI_SUPPORTED[Constants.CDI_SUPPORTED.length - 1]);
+    }
+
+    private static HandshakeInfo getHandshakeInfo(String key, long expiryTime) {
+        JsonObject response = new JsonObject();
+        response.addProperty("jwtSigningPublicKey", key);
+        response.addProperty("jwtSigningPublicKeyExpiryTime", expiryTime);
+        response.addProperty("cookieSecure", false);
+        response.addProperty("accessTokenPath", "/");
+        response.addProperty("refreshTokenPath", "/refresh");
+        response.addProperty("enableAntiCsrf", true);
+        response.addProperty("accessTokenBlacklistingEnabled", false);
+        response.addProperty("cookieSameSite", "lax");
+        response.addProperty("idRefreshTokenPath", "/");
+        response.addProperty("sessionExpiredStatusCode", 440);
+        return HandshakeInfo.fromHandshakeResponse(response, false);
+    }
+
+    // restores into a fresh process state, as a restarted node would
+    private boolean restoreAfterRestart(String hosts) {
+        HandshakeInfo.reset();
+        Querier.reset();
+        Querier.initInstance(hosts, null);
+        HandshakeSnapshot.setFile(this.file.toString());
+        return HandshakeSnapshot.restore();
+    }
+
+    @Test
+    public void restoreKeepsTheWholeKeyWindow() throws Exception {
+        long expiry = System.currentTimeMillis() + 3600000;
+        boolean published = HandshakeInfo.restore(getHandshakeInfo("first", expiry));
+        assert (published);
+        HandshakeInfo.getInstance().updateJwtSigningPublicKeyInfo("second", expiry + 1);
+
+        boolean restored = restoreAfterRestart(HOSTS);
+        assert (restored);
+        List<JwtSigningKey> keys = HandshakeInfo.getInstance().getJwtSigningPublicKeys();
+        assert (keys.size() == 2);
+        assert (keys.get(0).publicKey.equals("second") && keys.get(0).expiryTime == expiry + 1);
+        assert (keys.get(1).publicKey.equals("first") && keys.get(1).expiryTime == expiry);
+        assert (Querier.getInstance().getAPIVersion()
+                .equals(Constants.CDI_SUPPORTED[Constants.CDI_SUPPORTED.length - 1]));
+    }
+
+    @Test
+    public void expiredOlderKeysAreNotRestored() throws Exception {
+        long now = System.currentTimeMillis();
+        boolean published = HandshakeInfo.restore(getHandshakeInfo("first", now + 500));
+        assert (published);
+        HandshakeInfo.getInstance().updateJwtSigningPublicKeyInfo("second", now + 3600000);
+        Thread.sleep(600);
+
+        boolean restored = restoreAfterRestart(HOSTS);
+        assert (restored);
+        List<JwtSigningKey> keys = HandshakeInfo.getInstance().getJwtSigningPublicKeys();
+        assert (keys.size() == 1 && keys.get(0).publicKey.equals("second"));
+    }
+
+    @Test
+    public void snapshotForOtherHostsIsIgnored() {
+        HandshakeSnapshot.save(getHandshakeInfo("key", System.currentTimeMillis() + 3600000));
+        assert (Files.exists(this.file));
+        boolean restored = restoreAfterRestart("http://localhost:2");
+        assert (!restored);
+    }
+
+    @Test
+    public void snapshotWithExpiredKeyIsIgnored() {
+        HandshakeSnapshot.save(getHandshakeInfo("key", System.currentTimeMillis() - 1));
+        assert (Files.exists(this.file));
+        boolean restored = restoreAfterRestart(HOSTS);
+        assert (!restored);
+    }
+
+    @Test
+    public void corruptSnapshotIsIgnored() throws Exception {
+        Files.write(this.file, "{\"hosts\": \"http://localhost:1\", \"handshake\": ".getBytes(StandardCharsets.UTF_8));
+        boolean restored = restoreAfterRestart(HOSTS);
+        assert (!restored);
+        Files.write(this.file, "{}".getBytes(StandardCharsets.UTF_8));
+        restored = restoreAfterRestart(HOSTS);
+        assert (!restored);
+    }
+
+    @Test
+    public void saveReplacesTheFileWithoutLeavingTemporaryFiles() throws Exception {
+        long expiry = System.currentTimeMillis() + 3600000;
+        HandshakeSnapshot.save(getHandshakeInfo("first", expiry));
+        HandshakeSnapshot.save(getHandshakeInfo("second", expiry));
+        try (Stream<Path> files = Files.list(this.directory)) {
+            assert (files.count() == 1);
+        }
+        boolean restored = restoreAfterRestart(HOSTS);
+        assert (restored);
+        assert (HandshakeInfo.getInstance().jwtSigningPublicKey.equals("second"));
+    }
+}
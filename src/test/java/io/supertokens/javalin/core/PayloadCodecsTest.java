@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core;
+
+import com.google.gson.JsonObject;
+import io.supertokens.javalin.core.exception.GeneralException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PayloadCodecsTest {
+
+    static class Claims {
+        String role;
+        int level;
+    }
+
+    static class CountingCodec implements PayloadCodec<Claims> {
+
+        final AtomicInteger decodes = new AtomicInteger(0);
+
+        @Override
+        public Claims decode(JsonObject json) {
+            this.decodes.incrementAndGet();
+            Claims result = new Claims();
+            result.role = "codec:" + json.get("role").getAsString();
+            result.level = json.get("level").getAsInt();
+            return result;
+        }
+
+        @Override
+        public JsonObject encode(Claims value) {
+            JsonObject result = new JsonObject();
+            result.addProperty("role", "encoded:" + value.role);
+            result.addProperty("level", value.level);
+            return result;
+        }
+    }
+
+    private static JsonObject getJson() {
+        JsonObject result = new JsonObject();
+        result.addProperty("role", "admin");
+        result.addProperty("level", 3);
+        return result;
+    }
+
+    @Before
+    public void beforeEach() {
+        PayloadCodecs.reset();
+    }
+
+    @After
+    public void afterEach() {
+        PayloadCodecs.reset();
+    }
+
+    @Test
+    public void registeredCodecIsUsed() throws Exception {
+        CountingCodec codec = new CountingCodec();
+        SessionFunctions.configJwtPayloadType(Claims.class, codec);
+        Claims claims = PayloadCodecs.JWT_PAYLOAD.decode(getJson(), Claims.class);
+        assert (claims.role.equals("codec:admin") && claims.level == 3);
+        assert (codec.decodes.get() == 1);
+        assert (PayloadCodecs.JWT_PAYLOAD.encode(claims, Claims.class).get("role").getAsString()
+                .equals("encoded:codec:admin"));
+        assert (PayloadCodecs.JWT_PAYLOAD.get(Claims.class) == codec);
+    }
+
+    @Test
+    public void jwtPayloadAndSessionDataAreRegisteredSeparately() throws Exception {
+        CountingCodec codec = new CountingCodec();
+        SessionFunctions.configJwtPayloadType(Claims.class, codec);
+        Claims claims = PayloadCodecs.SESSION_DATA.decode(getJson(), Claims.class);
+        assert (claims.role.equals("admin"));
+        assert (codec.decodes.get() == 0);
+
+        CountingCodec sessionDataCodec = new CountingCodec();
+        SessionFunctions.configSessionDataType(Claims.class, sessionDataCodec);
+        PayloadCodecs.SESSION_DATA.decode(getJson(), Claims.class);
+        assert (sessionDataCodec.decodes.get() == 1 && codec.decodes.get() == 0);
+    }
+
+    @Test
+    public void unregisteredClassIsBoundWithACachedGsonCodec() throws Exception {
+        PayloadCodec<Claims> codec = PayloadCodecs.JWT_PAYLOAD.get(Claims.class);
+        assert (codec instanceof GsonPayloadCodec);
+        assert (PayloadCodecs.JWT_PAYLOAD.get(Claims.class) == codec);
+
+        Claims claims = PayloadCodecs.JWT_PAYLOAD.decode(getJson(), Claims.class);
+        assert (claims.role.equals("admin") && claims.level == 3);
+        JsonObject json = PayloadCodecs.JWT_PAYLOAD.encode(claims, Claims.class);
+        assert (json.equals(getJson()));
+    }
+
+    @Test
+    public void onlyTheRegisteredClassIsDecodedUpFront() throws Exception {
+        assert (PayloadCodecs.JWT_PAYLOAD.decodeRegistered(getJson()) == null);
+        // decoding another class does not make it the registered one
+        PayloadCodecs.JWT_PAYLOAD.decode(getJson(), Claims.class);
+        assert (PayloadCodecs.JWT_PAYLOAD.decodeRegistered(getJson()) == null);
+
+        CountingCodec codec = new CountingCodec();
+        SessionFunctions.configJwtPayloadType(Claims.class, codec);
+        Object decoded = PayloadCodecs.JWT_PAYLOAD.decodeRegistered(getJson());
+        assert (decoded instanceof Claims && ((Claims) decoded).role.equals("codec:admin"));
+        assert (PayloadCodecs.SESSION_DATA.decodeRegistered(getJson()) == null);
+    }
+
+    @Test
+    public void codecFailuresAreGeneralExceptions() {
+        SessionFunctions.configSessionDataType(Claims.class, new CountingCodec());
+        try {
+            PayloadCodecs.SESSION_DATA.decode(new JsonObject(), Claims.class);
+            assert (false);
+        } catch (GeneralException ignored) {
+        }
+    }
+
+    static class OtherClaims {
+        String role;
+    }
+
+    @Test
+    public void onlyOneJwtPayloadTypeCanBeRegistered() throws Exception {
+        SessionFunctions.configJwtPayloadType(Claims.class, new CountingCodec());
+        CountingCodec codec = new CountingCodec();
+        SessionFunctions.configJwtPayloadType(Claims.class, codec);
+        assert (PayloadCodecs.JWT_PAYLOAD.get(Claims.class) == codec);
+        try {
+            SessionFunctions.configJwtPayloadType(OtherClaims.class, PayloadCodec.gson(OtherClaims.class));
+            assert (false);
+        } catch (IllegalArgumentException ignored) {
+        }
+        assert (PayloadCodecs.JWT_PAYLOAD.isRegistered(Claims.class));
+        assert (!PayloadCodecs.JWT_PAYLOAD.isRegistered(OtherClaims.class));
+
+        // session data types are only decoded when asked for, so there can be several
+        SessionFunctions.configSessionDataType(Claims.class, new CountingCodec());
+        SessionFunctions.configSessionDataType(OtherClaims.class, PayloadCodec.gson(OtherClaims.class));
+        assert (PayloadCodecs.SESSION_DATA.decode(getJson(), OtherClaims.class).role.equals("admin"));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SignatureVerifierTest {
+
+    private static class SignedContent {
+        final String publicKey;
+        final byte[] content;
+        final byte[] signature;
+
+        SignedContent(String content) throws Exception {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keyPair = generator.generateKeyPair();
+            this.publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+            this.content = content.getBytes(StandardCharsets.UTF_8);
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(this.content);
+            this.signature = signature.sign();
+        }
+
+        boolean verify(String publicKey) throws Exception {
+            return Utils.verifyWithPublicKey(this.content, 0, this.content.length, this.signature, 0,
+                    this.signature.length, publicKey);
+        }
+    }
+
+    @Test
+    public void verifiersAreReusedAcrossShortLivedThreads() throws Exception {
+        SignedContent signed = new SignedContent("content");
+        for (int i = 0; i < 50; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    assert (signed.verify(signed.publicKey));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        // every thread found the one verifier the previous thread gave back
+        assert (Utils.getVerifierPoolForTesting(signed.publicKey).getIdleCount() == 1);
+    }
+
+    @Test
+    public void concurrentVerificationsWithTwoKeys() throws Exception {
+        SignedContent first = new SignedContent("first");
+        SignedContent second = new SignedContent("second");
+        AtomicInteger failures = new AtomicInteger(0);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 20; j++) {
+                        SignedContent signed = (index + j) % 2 == 0 ? first : second;
+                        SignedContent other = signed == first ? second : first;
+                        if (!signed.verify(signed.publicKey) || signed.verify(other.publicKey)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assert (failures.get() == 0);
+        assert (Utils.getVerifierPoolForTesting(first.publicKey).getIdleCount() <= Utils.VerifierPool.MAX_IDLE);
+        assert (Utils.getVerifierPoolForTesting(second.publicKey).getIdleCount() <= Utils.VerifierPool.MAX_IDLE);
+    }
+
+    @Test
+    public void idleVerifiersAreCapped() throws Exception {
+        SignedContent signed = new SignedContent("content");
+        Utils.VerifierPool pool = new Utils.VerifierPool(Utils.getPublicKey(signed.publicKey));
+        List<Signature> signatures = new ArrayList<>();
+        for (int i = 0; i < Utils.VerifierPool.MAX_IDLE + 10; i++) {
+            signatures.add(pool.acquire());
+        }
+        for (Signature signature : signatures) {
+            pool.release(signature);
+        }
+        assert (pool.getIdleCount() == Utils.VerifierPool.MAX_IDLE);
+    }
+
+    @Test
+    public void poolsOfRemovedKeysAreDropped() throws Exception {
+        SignedContent first = new SignedContent("first");
+        SignedContent second = new SignedContent("second");
+        assert (first.verify(first.publicKey) && second.verify(second.publicKey));
+        Utils.retainPublicKeys(Collections.singletonList(second.publicKey));
+        assert (Utils.getVerifierPoolForTesting(first.publicKey) == null);
+        assert (Utils.getVerifierPoolForTesting(second.publicKey) != null);
+        assert (first.verify(first.publicKey));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.accessToken;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+
+public class JWTTest {
+
+    static KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    static String getPublicKey(KeyPair keyPair) {
+        return Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+    }
+
+    static String sign(JsonObject payload, KeyPair keyPair) throws Exception {
+        JsonObject header = new JsonObject();
+        header.addProperty("alg", "RS256");
+        header.addProperty("typ", "JWT");
+        header.addProperty("version", "2");
+        String content = Base64.getEncoder().encodeToString(header.toString().getBytes(StandardCharsets.UTF_8)) + "."
+                + Base64.getEncoder().encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(content.getBytes(StandardCharsets.UTF_8));
+        return content + "." + Base64.getEncoder().encodeToString(signature.sign());
+    }
+
+    static JsonObject getPayload() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("sessionHandle", "handle");
+        payload.addProperty("userId", "user");
+        payload.addProperty("refreshTokenHash1", "hash");
+        payload.add("userData", new JsonObject());
+        payload.addProperty("expiryTime", System.currentTimeMillis() + 3600000);
+        payload.addProperty("timeCreated", System.currentTimeMillis());
+        return payload;
+    }
+
+    @Test
+    public void validTokenVerifies() throws Exception {
+        KeyPair keyPair = newKeyPair();
+        String token = sign(getPayload(), keyPair);
+        assert (JWT.verifyJWTAndGetPayload(token, getPublicKey(keyPair)).get("userId").getAsString().equals("user"));
+    }
+
+    @Test
+    public void nonAsciiCharWithSameLowByteIsRejected() throws Exception {
+        KeyPair keyPair = newKeyPair();
+        String token = sign(getPayload(), keyPair);
+        int index = token.indexOf('.') + 1;
+        while (token.charAt(index) != 'A') {
+            index++;
+        }
+        // U+0141 keeps 0x41, which is 'A', in its low byte
+        String tampered = token.substring(0, index) + '\u0141' + token.substring(index + 1);
+        try {
+            JWT.verifyJWTAndGetPayload(tampered, getPublicKey(keyPair));
+            throw new Exception("should fail!");
+        } catch (JWT.JWTException ignored) {
+        }
+    }
+}
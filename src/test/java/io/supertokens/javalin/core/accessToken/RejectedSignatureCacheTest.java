@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.accessToken;
+
+import com.google.gson.JsonObject;
+import io.supertokens.javalin.core.informationHolders.JwtSigningKey;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RejectedSignatureCacheTest {
+
+    @Before
+    public void beforeEach() {
+        RejectedSignatureCache.clear();
+        AccessTokenCache.clear();
+    }
+
+    @Test
+    public void entriesExpire() {
+        List<String> keys = Collections.singletonList("key");
+        RejectedSignatureCache.add("fresh", keys);
+        RejectedSignatureCache.add("old", keys,
+                System.currentTimeMillis() - RejectedSignatureCache.TIME_TO_LIVE - 1);
+        assert (RejectedSignatureCache.contains("fresh", keys));
+        assert (!RejectedSignatureCache.contains("old", keys));
+        // expired entries are removed when they are looked up
+        assert (RejectedSignatureCache.size() == 1);
+    }
+
+    @Test
+    public void cacheIsClearedWhenFull() {
+        List<String> keys = Collections.singletonList("key");
+        for (int i = 0; i < RejectedSignatureCache.MAX_SIZE; i++) {
+            RejectedSignatureCache.add("signature" + i, keys);
+        }
+        assert (RejectedSignatureCache.size() == RejectedSignatureCache.MAX_SIZE);
+        RejectedSignatureCache.add("one more", keys);
+        assert (RejectedSignatureCache.size() == 1);
+        assert (RejectedSignatureCache.contains("one more", keys));
+    }
+
+    @Test
+    public void entriesOnlyCountForTheSameKeyWindow() {
+        RejectedSignatureCache.add("signature", Arrays.asList("new", "old"));
+        assert (RejectedSignatureCache.contains("signature", Arrays.asList("new", "old")));
+        // a key was learnt, so the token has not been checked against it yet
+        assert (!RejectedSignatureCache.contains("signature", Arrays.asList("newer", "new", "old")));
+        assert (!RejectedSignatureCache.contains("signature", Arrays.asList("new", "old")));
+    }
+
+    @Test
+    public void tokenSignedByAnUnknownKeyIsAskedToTheCoreAgainOnceTheKeyIsKnown() throws Exception {
+        KeyPair known = JWTTest.newKeyPair();
+        KeyPair rotated = JWTTest.newKeyPair();
+        String token = JWTTest.sign(JWTTest.getPayload(), rotated);
+        long expiry = System.currentTimeMillis() + 3600000;
+        List<JwtSigningKey> before = Collections.singletonList(new JwtSigningKey(JWTTest.getPublicKey(known), expiry));
+
+        VerificationResult result = AccessToken.verifyLocally(token, before, false);
+        assert (result.status == VerificationResult.Status.ASK_CORE);
+        result.onRejectedByCore(token);
+        assert (AccessToken.verifyLocally(token, before, false).status == VerificationResult.Status.TRY_REFRESH);
+
+        List<JwtSigningKey> after = Arrays.asList(new JwtSigningKey(JWTTest.getPublicKey(rotated), expiry),
+                new JwtSigningKey(JWTTest.getPublicKey(known), expiry));
+        assert (AccessToken.verifyLocally(token, after, false).status == VerificationResult.Status.VERIFIED);
+    }
+
+    @Test
+    public void tokenAcceptedByTheCoreIsRemoved() throws Exception {
+        KeyPair known = JWTTest.newKeyPair();
+        String token = JWTTest.sign(JWTTest.getPayload(), JWTTest.newKeyPair());
+        List<JwtSigningKey> keys = Collections.singletonList(
+                new JwtSigningKey(JWTTest.getPublicKey(known), System.currentTimeMillis() + 3600000));
+        VerificationResult result = AccessToken.verifyLocally(token, keys, false);
+        assert (result.status == VerificationResult.Status.ASK_CORE);
+        result.onRejectedByCore(token);
+        RejectedSignatureCache.remove(token);
+        assert (AccessToken.verifyLocally(token, keys, false).status == VerificationResult.Status.ASK_CORE);
+    }
+
+    @Test
+    public void tokenIsOnlyRefusedLocallyOnceTheCoreHasRejectedIt() throws Exception {
+        KeyPair known = JWTTest.newKeyPair();
+        String token = JWTTest.sign(JWTTest.getPayload(), JWTTest.newKeyPair());
+        List<JwtSigningKey> keys = Collections.singletonList(
+                new JwtSigningKey(JWTTest.getPublicKey(known), System.currentTimeMillis() + 3600000));
+
+        // requests replaying the token while the core is still being asked have to ask it too
+        VerificationResult first = AccessToken.verifyLocally(token, keys, false);
+        VerificationResult second = AccessToken.verifyLocally(token, keys, false);
+        assert (first.status == VerificationResult.Status.ASK_CORE);
+        assert (second.status == VerificationResult.Status.ASK_CORE);
+        assert (RejectedSignatureCache.size() == 0);
+
+        first.onRejectedByCore(token);
+        assert (AccessToken.verifyLocally(token, keys, false).status == VerificationResult.Status.TRY_REFRESH);
+    }
+
+    @Test
+    public void tokenAskedToTheCoreForOtherReasonsIsNotRemembered() throws Exception {
+        KeyPair keyPair = JWTTest.newKeyPair();
+        JsonObject payload = JWTTest.getPayload();
+        payload.remove("userData");
+        String token = JWTTest.sign(payload, keyPair);
+        List<JwtSigningKey> keys = Collections.singletonList(
+                new JwtSigningKey(JWTTest.getPublicKey(keyPair), System.currentTimeMillis() + 3600000));
+
+        VerificationResult result = AccessToken.verifyLocally(token, keys, false);
+        assert (result.status == VerificationResult.Status.ASK_CORE);
+        result.onRejectedByCore(token);
+        assert (RejectedSignatureCache.size() == 0);
+    }
+}
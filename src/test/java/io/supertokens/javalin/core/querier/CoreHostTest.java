@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import org.junit.Test;
+
+public class CoreHostTest {
+
+    private static CoreHost getEjectedHost(long now) {
+        CoreHost host = new CoreHost("http://localhost:3567");
+        for (int i = 0; i < CoreHost.FAILURES_BEFORE_EJECTION; i++) {
+            host.onFailure(now);
+        }
+        return host;
+    }
+
+    @Test
+    public void hostIsEjectedOnlyAfterConsecutiveFailures() {
+        long now = System.currentTimeMillis();
+        CoreHost host = new CoreHost("http://localhost:3567");
+        for (int i = 1; i < CoreHost.FAILURES_BEFORE_EJECTION; i++) {
+            host.onFailure(now);
+            assert (host.getEjectedUntil() == 0 && host.isAvailable(now));
+        }
+        host.onSuccess();
+        for (int i = 1; i < CoreHost.FAILURES_BEFORE_EJECTION; i++) {
+            host.onFailure(now);
+        }
+        assert (host.getEjectedUntil() == 0);
+
+        host.onFailure(now);
+        assert (host.getEjectedUntil() == now + CoreHost.BASE_EJECTION_TIME);
+        boolean acquired = host.tryAcquire(now);
+        assert (!host.isAvailable(now) && !acquired);
+    }
+
+    @Test
+    public void failuresOfRequestsSentBeforeTheEjectionDoNotExtendIt() {
+        long now = System.currentTimeMillis();
+        CoreHost host = getEjectedHost(now);
+        host.onFailure(now + 1);
+        host.onFailure(now + CoreHost.BASE_EJECTION_TIME - 1);
+        assert (host.getEjectedUntil() == now + CoreHost.BASE_EJECTION_TIME);
+    }
+
+    @Test
+    public void ejectionTimeDoublesForEachFailedProbeUpToTheMaximum() {
+        long now = System.currentTimeMillis();
+        CoreHost host = getEjectedHost(now);
+        long ejectionTime = CoreHost.BASE_EJECTION_TIME;
+        for (int i = 0; i < 10; i++) {
+            now = host.getEjectedUntil();
+            boolean acquired = host.tryAcquire(now);
+            assert (acquired);
+            host.onFailure(now);
+            ejectionTime = Math.min(ejectionTime * 2, CoreHost.MAX_EJECTION_TIME);
+            assert (host.getEjectedUntil() == now + ejectionTime);
+        }
+        assert (ejectionTime == CoreHost.MAX_EJECTION_TIME);
+    }
+
+    @Test
+    public void onlyOneProbeIsLetThrough() {
+        long now = System.currentTimeMillis();
+        CoreHost host = getEjectedHost(now);
+        long until = host.getEjectedUntil();
+        assert (host.isAvailable(until));
+        boolean acquired = host.tryAcquire(until);
+        assert (acquired);
+        assert (!host.isAvailable(until + 1));
+        acquired = host.tryAcquire(until + 1);
+        assert (!acquired);
+
+        // a probe whose outcome never came back does not keep the host out forever
+        long later = until + 2 * HttpTransport.TIMEOUT;
+        assert (host.isAvailable(later));
+        acquired = host.tryAcquire(later);
+        assert (acquired);
+        acquired = host.tryAcquire(later);
+        assert (!acquired);
+    }
+
+    @Test
+    public void successfulProbeReadmitsTheHostAndResetsTheEjectionTime() {
+        long now = System.currentTimeMillis();
+        CoreHost host = getEjectedHost(now);
+        now = host.getEjectedUntil();
+        boolean acquired = host.tryAcquire(now);
+        assert (acquired);
+        host.onFailure(now);
+        now = host.getEjectedUntil();
+        acquired = host.tryAcquire(now);
+        assert (acquired);
+        host.onSuccess();
+        assert (host.getEjectedUntil() == 0);
+        acquired = host.tryAcquire(now) && host.tryAcquire(now);
+        assert (host.isAvailable(now) && acquired);
+
+        for (int i = 0; i < CoreHost.FAILURES_BEFORE_EJECTION; i++) {
+            host.onFailure(now);
+        }
+        assert (host.getEjectedUntil() == now + CoreHost.BASE_EJECTION_TIME);
+    }
+
+    @Test
+    public void onlyRequestsThatGotAResponseAreMeasured() throws Exception {
+        CoreHost host = new CoreHost("http://localhost:3567");
+        long startTime = host.onRequestStart();
+        Thread.sleep(20);
+        host.onRequestEnd(startTime, true);
+        double latency = host.getLatency();
+        assert (latency >= 20);
+
+        // a refused connection answers immediately, which must not make the host look fast
+        startTime = host.onRequestStart();
+        assert (host.getOutstandingRequests() == 1);
+        host.onRequestEnd(startTime, false);
+        assert (host.getOutstandingRequests() == 0);
+        assert (host.getLatency() == latency);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import org.junit.Test;
+
+public class HedgingTest {
+
+    private static final int MAX_HEDGES = (int) (Hedging.MAX_TOKENS / Hedging.TOKEN);
+
+    private static int hedgeAll(Hedging hedging) {
+        int hedges = 0;
+        while (hedging.tryHedge()) {
+            hedges++;
+        }
+        return hedges;
+    }
+
+    @Test
+    public void noDelayBeforeEnoughResponses() {
+        Hedging hedging = new Hedging(0.9, 0.1);
+        for (int i = 1; i < Hedging.RECOMPUTE_INTERVAL; i++) {
+            hedging.onResponse(i);
+            assert (hedging.getDelay() == -1);
+        }
+        hedging.onResponse(Hedging.RECOMPUTE_INTERVAL);
+        assert (hedging.getDelay() != -1);
+    }
+
+    @Test
+    public void delayIsThePercentileOfTheResponseTimes() {
+        Hedging hedging = new Hedging(0.9, 0.1);
+        // out of order, so that the samples have to be sorted
+        for (int i = Hedging.RECOMPUTE_INTERVAL; i > 0; i--) {
+            hedging.onResponse(i);
+        }
+        assert (hedging.getDelay() == (long) Math.ceil(0.9 * Hedging.RECOMPUTE_INTERVAL));
+
+        // only recomputed every RECOMPUTE_INTERVAL responses
+        hedging = new Hedging(0.5, 0.1);
+        for (int i = 1; i <= Hedging.RECOMPUTE_INTERVAL; i++) {
+            hedging.onResponse(i);
+        }
+        assert (hedging.getDelay() == Hedging.RECOMPUTE_INTERVAL / 2);
+        hedging.onResponse(1000000);
+        assert (hedging.getDelay() == Hedging.RECOMPUTE_INTERVAL / 2);
+    }
+
+    @Test
+    public void delayOnlyDependsOnTheLatestResponses() {
+        Hedging hedging = new Hedging(0.99, 0.1);
+        for (int i = 0; i < Hedging.SAMPLE_COUNT; i++) {
+            hedging.onResponse(1000000);
+        }
+        assert (hedging.getDelay() == 1000000);
+        for (int i = 0; i < Hedging.SAMPLE_COUNT; i++) {
+            hedging.onResponse(5);
+        }
+        assert (hedging.getDelay() == 5);
+    }
+
+    @Test
+    public void hedgesStopWhenTheBudgetIsSpent() {
+        Hedging hedging = new Hedging(0.9, 0.1);
+        int hedged = hedgeAll(hedging);
+        assert (hedged == MAX_HEDGES);
+        assert (hedging.fired.sum() == MAX_HEDGES);
+
+        // each read earns a tenth of a hedge
+        for (int i = 0; i < 9; i++) {
+            hedging.onRequest();
+        }
+        hedged = hedgeAll(hedging);
+        assert (hedged == 0);
+        hedging.onRequest();
+        hedged = hedgeAll(hedging);
+        assert (hedged == 1);
+        assert (hedging.fired.sum() == MAX_HEDGES + 1);
+    }
+
+    @Test
+    public void budgetIsCapped() {
+        Hedging hedging = new Hedging(0.9, 1);
+        for (int i = 0; i < 1000; i++) {
+            hedging.onRequest();
+        }
+        int hedged = hedgeAll(hedging);
+        assert (hedged == MAX_HEDGES);
+    }
+
+    @Test
+    public void zeroRateOnlyAllowsTheInitialBudget() {
+        Hedging hedging = new Hedging(0.9, 0);
+        int hedged = hedgeAll(hedging);
+        assert (hedged == MAX_HEDGES);
+        for (int i = 0; i < 1000; i++) {
+            hedging.onRequest();
+        }
+        hedged = hedgeAll(hedging);
+        assert (hedged == 0);
+    }
+
+    @Test
+    public void invalidSettingsAreRejected() {
+        double[][] settings = {{0, 0.1}, {1, 0.1}, {0.9, -0.1}, {0.9, 1.1}};
+        for (double[] setting : settings) {
+            try {
+                new Hedging(setting[0], setting[1]);
+                assert (false);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+}
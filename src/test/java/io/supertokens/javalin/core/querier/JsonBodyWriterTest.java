@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class JsonBodyWriterTest {
+
+    private static final String[] STRINGS = {
+            "", "plain", "quote \" and backslash \\", "control \n\r\t\b\f \u0000 \u001f",
+            "html <b>&amp;</b> = 'x'", "latin \u00e9 \u00fc", "cjk \u4e2d\u6587", "separators \u2028 \u2029",
+            "emoji \ud83d\ude00", "delete \u007f"
+    };
+
+    private static String toString(byte[] body) {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static JsonObject getNestedObject() {
+        JsonObject result = new JsonObject();
+        JsonArray array = new JsonArray();
+        for (String value : STRINGS) {
+            array.add(new JsonPrimitive(value));
+        }
+        array.add(JsonNull.INSTANCE);
+        array.add(new JsonPrimitive(1.5));
+        array.add(new JsonArray());
+        result.add("array", array);
+        JsonObject inner = new JsonObject();
+        inner.add("null", JsonNull.INSTANCE);
+        inner.addProperty("long", Long.MIN_VALUE);
+        inner.addProperty("double", -0.25e-10);
+        inner.addProperty("true", true);
+        inner.add("empty", new JsonObject());
+        result.add("inner \u2028 \"name\"", inner);
+        return result;
+    }
+
+    @Test
+    public void bodyMatchesJsonObjectToString() {
+        JsonObject expected = new JsonObject();
+        for (int i = 0; i < STRINGS.length; i++) {
+            expected.addProperty(STRINGS[i], STRINGS[STRINGS.length - 1 - i]);
+        }
+        expected.add("nested", getNestedObject());
+        assert (toString(JsonBodyWriter.write(RequestBody.of(expected))).equals(expected.toString()));
+    }
+
+    @Test
+    public void typedMembersMatchJsonObjectToString() {
+        JsonObject expected = new JsonObject();
+        expected.addProperty("string", STRINGS[3]);
+        expected.add("nullString", JsonNull.INSTANCE);
+        expected.addProperty("boolean", false);
+        expected.addProperty("long", Long.MAX_VALUE);
+        JsonArray array = new JsonArray();
+        for (String value : STRINGS) {
+            array.add(new JsonPrimitive(value));
+        }
+        expected.add("strings", array);
+        expected.add("element", getNestedObject());
+
+        byte[] body = JsonBodyWriter.write(writer -> writer
+                .member("string", STRINGS[3])
+                .member("nullString", (String) null)
+                .member("boolean", false)
+                .member("long", Long.MAX_VALUE)
+                .member("strings", STRINGS)
+                .member("element", getNestedObject()));
+        assert (toString(body).equals(expected.toString()));
+    }
+
+    @Test
+    public void rawMembersAreAppended() {
+        JsonObject driver = new JsonObject();
+        driver.addProperty("name", "javalin");
+        driver.addProperty("version", "\u00e9 1.0");
+        byte[] driverMember = JsonBodyWriter.encodeMember("driver", driver);
+        byte[] sdkMember = JsonBodyWriter.encodeMember("frontendSDK", new JsonArray());
+
+        JsonObject expected = new JsonObject();
+        expected.add("driver", driver);
+        assert (toString(JsonBodyWriter.write(writer -> {
+        }, driverMember)).equals(expected.toString()));
+
+        JsonObject body = new JsonObject();
+        body.addProperty("userId", STRINGS[4]);
+        expected = new JsonObject();
+        expected.addProperty("userId", STRINGS[4]);
+        expected.add("frontendSDK", new JsonArray());
+        expected.add("driver", driver);
+        assert (toString(JsonBodyWriter.write(RequestBody.of(body), sdkMember, driverMember))
+                .equals(expected.toString()));
+    }
+
+    @Test
+    public void bodyWrittenWhileWritingAnotherIsSeparate() {
+        JsonObject inner = new JsonObject();
+        inner.addProperty("inner", STRINGS[5]);
+        byte[][] nested = new byte[1][];
+        byte[] outer = JsonBodyWriter.write(writer -> {
+            writer.member("before", 1);
+            nested[0] = JsonBodyWriter.write(RequestBody.of(inner));
+            writer.member("after", 2);
+        });
+        assert (toString(outer).equals("{\"before\":1,\"after\":2}"));
+        assert (toString(nested[0]).equals(inner.toString()));
+    }
+
+    @Test
+    public void largeBodiesAreWrittenWhole() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append(STRINGS[i % STRINGS.length]);
+        }
+        JsonObject body = new JsonObject();
+        body.addProperty("value", value.toString());
+        for (int i = 0; i < 3; i++) {
+            assert (toString(JsonBodyWriter.write(RequestBody.of(body))).equals(body.toString()));
+            JsonElement small = new JsonPrimitive(i);
+            assert (toString(JsonBodyWriter.encodeMember("i", small)).equals("\"i\":" + i));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LoadBalancerTest {
+
+    private static class TestHost implements LoadBalancer.Host {
+
+        private final String url;
+
+        private final int outstandingRequests;
+
+        private final double latency;
+
+        TestHost(String url, int outstandingRequests, double latency) {
+            this.url = url;
+            this.outstandingRequests = outstandingRequests;
+            this.latency = latency;
+        }
+
+        TestHost(String url) {
+            this(url, 0, 0);
+        }
+
+        @Override
+        public String getUrl() {
+            return this.url;
+        }
+
+        @Override
+        public int getOutstandingRequests() {
+            return this.outstandingRequests;
+        }
+
+        @Override
+        public double getLatency() {
+            return this.latency;
+        }
+    }
+
+    private static Map<String, Integer> countSelections(LoadBalancer loadBalancer, List<TestHost> hosts, int count) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            result.merge(loadBalancer.select(hosts).getUrl(), 1, Integer::sum);
+        }
+        return result;
+    }
+
+    @Test
+    public void roundRobinGoesThroughEveryHostInTurn() {
+        List<TestHost> hosts = List.of(new TestHost("a"), new TestHost("b"), new TestHost("c"));
+        LoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+        for (int i = 0; i < 9; i++) {
+            TestHost selected = loadBalancer.select(hosts);
+            assert (selected == hosts.get(i % 3));
+        }
+    }
+
+    @Test
+    public void weightedGivesEachHostItsWeightOfConsecutiveRequests() {
+        List<TestHost> hosts = List.of(new TestHost("http://a"), new TestHost("http://b"), new TestHost("http://c"));
+        LoadBalancer loadBalancer = new WeightedLoadBalancer(Map.of("http://a", 3, "http://c/", 2));
+        String expected = "http://a http://a http://a http://b http://c http://c ";
+        StringBuilder round = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            round.append(loadBalancer.select(hosts).getUrl()).append(" ");
+        }
+        assert (round.toString().equals(expected));
+
+        Map<String, Integer> counts = countSelections(loadBalancer, hosts, 600);
+        assert (counts.get("http://a") == 300);
+        assert (counts.get("http://b") == 100);
+        assert (counts.get("http://c") == 200);
+    }
+
+    @Test
+    public void weightedSharesOutTheRequestsOfALeftOutHost() {
+        List<TestHost> hosts = List.of(new TestHost("http://b"), new TestHost("http://c"));
+        LoadBalancer loadBalancer = new WeightedLoadBalancer(Map.of("http://a", 3, "http://c", 2));
+        Map<String, Integer> counts = countSelections(loadBalancer, hosts, 300);
+        assert (counts.get("http://b") == 100);
+        assert (counts.get("http://c") == 200);
+    }
+
+    @Test
+    public void weightedRejectsWeightsThatAreNotPositive() {
+        for (int weight : new int[]{0, -1}) {
+            try {
+                new WeightedLoadBalancer(Map.of("http://a", weight));
+                assert (false);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void peakEwmaPicksTheCheaperOfTwoHosts() {
+        LoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+
+        // same latency, fewer requests in flight
+        List<TestHost> hosts = List.of(new TestHost("busy", 4, 10), new TestHost("idle", 0, 10));
+        Map<String, Integer> counts = countSelections(loadBalancer, hosts, 100);
+        assert (counts.get("idle") == 100);
+
+        // same load, lower latency
+        hosts = List.of(new TestHost("fast", 2, 5), new TestHost("slow", 2, 50));
+        counts = countSelections(loadBalancer, hosts, 100);
+        assert (counts.get("fast") == 100);
+
+        // a slow host is still used when the fast one is loaded enough
+        hosts = List.of(new TestHost("fast", 20, 5), new TestHost("slow", 0, 50));
+        counts = countSelections(loadBalancer, hosts, 100);
+        assert (counts.get("slow") == 100);
+    }
+
+    @Test
+    public void peakEwmaOnlyPrefersAnUnmeasuredHostWhileItIsIdle() {
+        LoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        List<TestHost> hosts = List.of(new TestHost("new", 0, 0), new TestHost("old", 1, 10));
+        Map<String, Integer> counts = countSelections(loadBalancer, hosts, 100);
+        assert (counts.get("new") == 100);
+
+        hosts = List.of(new TestHost("new", 1, 0), new TestHost("old", 50, 10000));
+        counts = countSelections(loadBalancer, hosts, 100);
+        assert (counts.get("old") == 100);
+    }
+
+    @Test
+    public void peakEwmaNeverPicksTheMostLoadedHost() {
+        LoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+        List<TestHost> hosts = List.of(new TestHost("a", 1, 10), new TestHost("b", 9, 10), new TestHost("c", 2, 10),
+                new TestHost("d", 3, 10));
+        Map<String, Integer> counts = countSelections(loadBalancer, hosts, 1000);
+        assert (!counts.containsKey("b"));
+        // a is cheaper than every other host, so it wins each of the half of the pairs it is in
+        assert (counts.get("a") > counts.get("c") && counts.get("c") > counts.get("d"));
+    }
+}
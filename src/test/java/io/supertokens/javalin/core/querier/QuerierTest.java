@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import io.supertokens.javalin.Constants;
+import io.supertokens.javalin.core.exception.GeneralException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class QuerierTest {
+
+    /*
+     * Answers every request with the given status after the given delay, both of which can be changed while it runs.
+     */
+    private static class FakeCore implements AutoCloseable {
+
+        private final HttpServer server;
+
+        volatile long delay = 0;
+
+        volatile int status = 200;
+
+        FakeCore() throws IOException {
+            this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            this.server.setExecutor(Executors.newCachedThreadPool());
+            this.server.createContext("/", exchange -> {
+                try {
+                    Thread.sleep(this.delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "{\"status\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(this.status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            this.server.start();
+        }
+
+        String getUrl() {
+            return "http://localhost:" + this.server.getAddress().getPort();
+        }
+
+        @Override
+        public void close() {
+            this.server.stop(0);
+        }
+    }
+
+    @Before
+    public void beforeEach() {
+        Querier.reset();
+    }
+
+    @After
+    public void afterEach() {
+        Querier.reset();
+    }
+
+    private static void initQuerier(String hosts) {
+        Querier.initInstance(hosts, null);
+        Querier.getInstance().restoreAPIVersion(Constants.CDI_SUPPORTED[Constants.CDI_SUPPORTED.length - 1]);
+    }
+
+    @Test
+    public void coalescedReadFailsWhenTheFirstCallerThrows() throws Exception {
+        initQuerier("http://localhost:1");
+        CountDownLatch selecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Querier.setLoadBalancer(new LoadBalancer() {
+            @Override
+            public <T extends Host> T select(List<T> hosts) {
+                selecting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("no host");
+            }
+        });
+
+        AtomicReference<CompletableFuture<Object>> first = new AtomicReference<>();
+        Thread sender = new Thread(() -> first.set(Querier.getInstance()
+                .sendGetRequestAsync("", "/session/data", Map.of("sessionHandle", "handle"))));
+        sender.start();
+        boolean selected = selecting.await(5, TimeUnit.SECONDS);
+        assert (selected);
+
+        // the first request is now in flight, so this one waits on it instead of being sent
+        CompletableFuture<Object> second = Querier.getInstance()
+                .sendGetRequestAsync("", "/session/data", Map.of("sessionHandle", "handle"));
+        release.countDown();
+        sender.join();
+
+        assertFailsWith(first.get(), IllegalStateException.class);
+        assertFailsWith(second, IllegalStateException.class);
+    }
+
+    private static void assertFailsWith(CompletableFuture<?> future, Class<? extends Throwable> type)
+            throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            assert (false);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause.getCause() != null && !type.isInstance(cause)) {
+                cause = cause.getCause();
+            }
+            assert (type.isInstance(cause));
+        }
+    }
+
+    @Test
+    public void requestsAreStillSentWhenEveryHostIsEjected() throws Exception {
+        AtomicInteger connections = new AtomicInteger(0);
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                while (true) {
+                    try (Socket socket = server.accept()) {
+                        connections.incrementAndGet();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.start();
+            initQuerier("http://localhost:" + server.getLocalPort());
+            int requests = CoreHost.FAILURES_BEFORE_EJECTION + 2;
+            for (int i = 0; i < requests; i++) {
+                try {
+                    Querier.getInstance().sendPostRequest("", "/session/remove", new JsonObject());
+                    assert (false);
+                } catch (GeneralException ignored) {
+                }
+            }
+            assert (connections.get() >= requests);
+        }
+    }
+
+    private static CompletableFuture<JsonObject> sendRead(int i) {
+        return Querier.getInstance().sendGetRequestAsync("", "/session/data", Map.of("sessionHandle", "h" + i));
+    }
+
+    // enough responses from both hosts for the hedge delay to be known
+    private static void warmUp() throws Exception {
+        for (int i = 0; i < Hedging.RECOMPUTE_INTERVAL; i++) {
+            sendRead(i).get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void hedgedReadGetsTheFirstSuccessfulResponse() throws Exception {
+        try (FakeCore slow = new FakeCore(); FakeCore fast = new FakeCore()) {
+            initQuerier(slow.getUrl() + ";" + fast.getUrl());
+            Querier.setHedging(0.5, 1);
+            warmUp();
+
+            slow.delay = 3000;
+            for (int i = 0; i < 10; i++) {
+                long startTime = System.currentTimeMillis();
+                JsonObject response = sendRead(i).get(5, TimeUnit.SECONDS);
+                assert (response.get("status").getAsString().equals("OK"));
+                assert (System.currentTimeMillis() - startTime < slow.delay);
+            }
+            // round robin sends every other read to the slow host first
+            assert (Querier.getHedgesWon() >= 5);
+            assert (Querier.getHedgesFired() >= Querier.getHedgesWon());
+
+            // the slow host fails after all, which does not matter once the other one answered
+            slow.status = 500;
+            for (int i = 0; i < 2; i++) {
+                JsonObject response = sendRead(i).get(5, TimeUnit.SECONDS);
+                assert (response.get("status").getAsString().equals("OK"));
+            }
+        }
+    }
+
+    @Test
+    public void hedgedReadOnlyFailsOnceEveryAttemptFailed() throws Exception {
+        try (FakeCore slow = new FakeCore(); FakeCore fast = new FakeCore()) {
+            initQuerier(slow.getUrl() + ";" + fast.getUrl());
+            Querier.setHedging(0.5, 1);
+            warmUp();
+
+            slow.delay = 500;
+            slow.status = 500;
+            fast.status = 500;
+            for (int i = 0; i < 2; i++) {
+                long startTime = System.currentTimeMillis();
+                assertFailsWith(sendRead(i), GeneralException.class);
+                // whichever host was tried first, the slow one was tried too, and its answer was waited for
+                assert (System.currentTimeMillis() - startTime >= slow.delay);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020, VRAI Labs and/or its affiliates. All rights reserved.
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the
+ * "License") as published by the Apache Software Foundation.
+ *
+ * You may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.supertokens.javalin.core.querier;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ResponseDecoderTest {
+
+    private static final ResponseReader<String> STATUS_READER = reader -> {
+        String status = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("status")) {
+                status = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return status;
+    };
+
+    private static HttpTransport.Response getResponse(int statusCode, String body) throws IOException {
+        return ResponseDecoder.read(statusCode, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static <T> T decode(String body, ResponseReader<T> responseReader) throws Exception {
+        return ResponseDecoder.decode(getResponse(200, body), responseReader);
+    }
+
+    private static void assertInvalid(String body, ResponseReader<?> responseReader) throws Exception {
+        try {
+            decode(body, responseReader);
+            assert (false);
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void plainTextIsReturnedAsAString() throws Exception {
+        for (String body : new String[]{"Hello", "", "  \n", "\u00e9t\u00e9 \ud83d\ude00", "123", "\"quoted\""}) {
+            Object result = decode(body, null);
+            assert (result instanceof String && result.equals(body));
+        }
+        assertInvalid("Hello", STATUS_READER);
+        assertInvalid("", STATUS_READER);
+    }
+
+    @Test
+    public void validJsonIsParsed() throws Exception {
+        String[] bodies = {
+                "{\"status\":\"OK\",\"text\":\"\u00e9t\u00e9 \u4e2d \ud83d\ude00 \\u2028\"}",
+                " \r\n\t[1, {\"a\": null}, \"\u00fc\"]  \n",
+                "{}"
+        };
+        for (String body : bodies) {
+            JsonElement result = decode(body, null);
+            assert (result.equals(new JsonParser().parse(body)));
+        }
+        assert (decode(bodies[0], STATUS_READER).equals("OK"));
+        JsonObject object = decode(bodies[0], null);
+        assert (object.get("text").getAsString().equals("\u00e9t\u00e9 \u4e2d \ud83d\ude00 \u2028"));
+    }
+
+    @Test
+    public void longMultiByteTextIsDecodedAcrossReads() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append(i % 3 == 0 ? "\ud83d\ude00" : i % 3 == 1 ? "\u4e2d" : "\u00e9");
+        }
+        JsonObject result = decode("{\"status\":\"OK\",\"text\":\"" + text + "\"}", null);
+        assert (result.get("text").getAsString().equals(text.toString()));
+    }
+
+    @Test
+    public void malformedJsonIsReturnedAsAStringWithoutAReader() throws Exception {
+        String[] bodies = {"{", "{\"status\":", "[1, 2", "{\"status\":\"OK\"} trailing", "{status: OK", "[}"};
+        for (String body : bodies) {
+            Object result = decode(body, null);
+            assert (result instanceof String && result.equals(body));
+            assertInvalid(body, STATUS_READER);
+        }
+    }
+
+    @Test
+    public void errorStatusThrowsWithTheBody() throws Exception {
+        try {
+            ResponseDecoder.decode(getResponse(500, "{\"status\":\"\u00e9\"}"), null);
+            assert (false);
+        } catch (HttpResponseException e) {
+            assert (e.statusCode == 500);
+            assert (e.getMessage().endsWith("{\"status\":\"\u00e9\"}"));
+        }
+    }
+}
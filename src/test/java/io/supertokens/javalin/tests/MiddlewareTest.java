@@ -367,4 +367,69 @@ public class MiddlewareTest {
             }
         }
     }
+
+    @Test
+    public void testAsyncMiddleware() throws Exception {
+        Utils.startST();
+        SuperTokens.config().withHosts("http://localhost:8080");
+
+        Javalin app = null;
+        try {
+            app = Javalin.create().start("localhost", 8081);
+            app.exception(SuperTokensException.class, SuperTokens.exceptionHandler());
+
+            app.post("/create", ctx -> {
+                SuperTokens.newSession(ctx, "testing-userId").create();
+                ctx.result("");
+            });
+
+            app.post("/verify", SuperTokens.asyncMiddleware(ctx ->
+                    ctx.result(SuperTokens.getFromContext(ctx).getUserId())));
+
+            app.post("/session/refresh", SuperTokens.asyncMiddleware(ctx -> ctx.result("{\"message\": true}")));
+
+            Map<String, String> response = Utils.extractInfoFromResponse(HttpRequest.sendJsonPOSTRequest(
+                    "http://localhost:8081/create", new JsonObject(), null));
+
+            Map<String, String> response2;
+            {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Cookie", "sRefreshToken=" + response.get("refreshToken"));
+                headers.put("anti-csrf", response.get("antiCsrf"));
+                response2 = Utils.extractInfoFromResponse(HttpRequest.sendJsonPOSTRequest(
+                        "http://localhost:8081/session/refresh", new JsonObject(), headers));
+            }
+            assert (response2.get("accessToken") != null);
+            assert (response2.get("refreshToken") != null);
+
+            // a child access token is verified by the core, so the handler runs after the request was suspended
+            {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Cookie", "sAccessToken=" + response2.get("accessToken") + ";sIdRefreshToken=" +
+                        response2.get("idRefreshTokenFromCookie"));
+                headers.put("anti-csrf", response2.get("antiCsrf"));
+                HttpURLConnection con = HttpRequest.sendJsonPOSTRequest("http://localhost:8081/verify",
+                        new JsonObject(), headers);
+                assert (con.getResponseCode() == 200);
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()))) {
+                    assert (in.readLine().equals("testing-userId"));
+                }
+                assert (ProcessState.getInstance().getLastEventByName(
+                        ProcessState.PROCESS_STATE.CALLING_SERVICE_IN_VERIFY) != null);
+            }
+
+            {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Cookie", "sAccessToken=invalid;sIdRefreshToken=" +
+                        response2.get("idRefreshTokenFromCookie"));
+                HttpURLConnection con = HttpRequest.sendJsonPOSTRequest("http://localhost:8081/verify",
+                        new JsonObject(), headers);
+                assert (con.getResponseCode() == 401);
+            }
+        } finally {
+            if (app != null) {
+                app.stop();
+            }
+        }
+    }
 }
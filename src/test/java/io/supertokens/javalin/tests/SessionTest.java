@@ -17,9 +17,13 @@
 package io.supertokens.javalin.tests;
 
 import com.google.gson.JsonObject;
+import io.javalin.Javalin;
 import io.supertokens.javalin.Constants;
 import io.supertokens.javalin.ProcessState;
+import io.supertokens.javalin.Session;
+import io.supertokens.javalin.SessionBuilder;
 import io.supertokens.javalin.SuperTokens;
+import io.supertokens.javalin.core.PayloadCodec;
 import io.supertokens.javalin.core.SessionFunctions;
 import io.supertokens.javalin.core.exception.TokenTheftDetectedException;
 import io.supertokens.javalin.core.exception.TryRefreshTokenException;
@@ -27,11 +31,17 @@ import io.supertokens.javalin.core.exception.UnauthorisedException;
 import io.supertokens.javalin.core.informationHolders.SessionTokens;
 import io.supertokens.javalin.core.querier.HttpRequestMocking;
 import io.supertokens.javalin.core.querier.Querier;
+import io.supertokens.javalin.tests.httprequest.HttpRequest;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SessionTest {
 
@@ -87,6 +97,33 @@ public class SessionTest {
         } catch (TokenTheftDetectedException ignored) { }
     }
 
+    @Test
+    public void testAsyncSessionUse() throws Exception {
+        Utils.startST();
+        SuperTokens.config()
+                .withHosts("http://localhost:8080");
+
+        SessionTokens response = SessionFunctions.createNewSessionAsync("", new JsonObject(), new JsonObject()).get();
+        assert (response.accessToken.token != null);
+
+        SessionTokens session = SessionFunctions.getSessionAsync(response.accessToken.token, response.antiCsrfToken,
+                true).get();
+        assert (session.handle.equals(response.handle));
+
+        SessionTokens response2 = SessionFunctions.refreshSessionAsync(response.refreshToken.token,
+                response.antiCsrfToken).get();
+        assert (response2.handle.equals(response.handle));
+
+        assert (SessionFunctions.revokeSessionAsync(response.handle).get());
+
+        try {
+            SessionFunctions.getSessionDataAsync(response.handle).join();
+            throw new Exception("should not have come here");
+        } catch (CompletionException e) {
+            assert (e.getCause() instanceof UnauthorisedException);
+        }
+    }
+
     @Test
     public void queryWithoutAPIKey() throws Exception {
         Utils.setKeyValueInConfig("api_keys", "=asdfkjasbdlf=ka-jbdlfakjsdbvlakjdsb==");
@@ -180,6 +217,47 @@ public class SessionTest {
         } catch (TryRefreshTokenException ignored) { }
     }
 
+    @Test
+    public void testLocallyDecidedFailuresDoNotQueryCore() throws Exception {
+        Utils.startST();
+        SuperTokens.config()
+                .withHosts("http://localhost:8080");
+
+        SessionTokens response = SessionFunctions.createNewSession("", new JsonObject(), new JsonObject());
+
+        try {
+            SessionFunctions.getSession(response.accessToken.token, "wrong-anti-csrf", true);
+            throw new Exception("should not come here");
+        } catch (TryRefreshTokenException ignored) { }
+        assert (ProcessState.getInstance().getLastEventByName(ProcessState.PROCESS_STATE.CALLING_SERVICE_IN_VERIFY) == null);
+
+        try {
+            SessionFunctions.getSession("not.a-valid.token", response.antiCsrfToken, true);
+            throw new Exception("should not come here");
+        } catch (TryRefreshTokenException ignored) { }
+        assert (ProcessState.getInstance().getLastEventByName(ProcessState.PROCESS_STATE.CALLING_SERVICE_IN_VERIFY) == null);
+    }
+
+    @Test
+    public void testChildAccessTokenVerifiedLocallyAfterCoreAcceptsIt() throws Exception {
+        Utils.startST();
+        SuperTokens.config()
+                .withHosts("http://localhost:8080");
+
+        SessionTokens response = SessionFunctions.createNewSession("", new JsonObject(), new JsonObject());
+        SessionTokens response2 = SessionFunctions.refreshSession(response.refreshToken.token, response.antiCsrfToken);
+
+        SessionFunctions.getSession(response2.accessToken.token, response2.antiCsrfToken, true);
+        assert (ProcessState.getInstance().getLastEventByName(ProcessState.PROCESS_STATE.CALLING_SERVICE_IN_VERIFY) != null);
+
+        ProcessState.reset();
+
+        SessionTokens response3 = SessionFunctions.getSession(response2.accessToken.token, response2.antiCsrfToken, true);
+        assert (ProcessState.getInstance().getLastEventByName(ProcessState.PROCESS_STATE.CALLING_SERVICE_IN_VERIFY) == null);
+        assert (response3.handle.equals(response2.handle));
+        assert (response3.accessToken == null);
+    }
+
     @Test
     public void testRevokingOfSessions() throws Exception {
         Utils.startST();
@@ -286,6 +364,31 @@ public class SessionTest {
 
     }
 
+    @Test
+    public void malformedAccessTokenIsRefusedWithoutQueryingTheCore() throws Exception {
+        Utils.startST();
+        SuperTokens.config()
+                .withHosts("http://localhost:8080");
+
+        SessionTokens response = SessionFunctions.createNewSession("", new JsonObject(), new JsonObject());
+        String token = response.accessToken.token;
+        ProcessState.reset();
+
+        String[] malformedTokens = {"", "abc", token.substring(1), token + ".extra", token.substring(0,
+                token.lastIndexOf('.') + 1), token.replace('.', '!')};
+        for (String malformedToken : malformedTokens) {
+            try {
+                SessionFunctions.getSession(malformedToken, response.antiCsrfToken, false);
+                throw new Exception("should not have come here");
+            } catch (TryRefreshTokenException ignored) { }
+        }
+        assert (ProcessState.getInstance().getLastEventByName(
+                ProcessState.PROCESS_STATE.CALLING_SERVICE_IN_VERIFY) == null);
+
+        // the well formed token is still verified
+        SessionFunctions.getSession(token, response.antiCsrfToken, false);
+    }
+
     @Test
     public void testNoAntiCSRFRequiredIfDisabledFromCore() throws Exception {
         Utils.setKeyValueInConfig("enable_anti_csrf", "false");
@@ -300,4 +403,131 @@ public class SessionTest {
         SessionFunctions.getSession(response.accessToken.token, null, true);
     }
 
+    static class Claims {
+        String role;
+        int level;
+
+        Claims(String role, int level) {
+            this.role = role;
+            this.level = level;
+        }
+    }
+
+    static class Preferences {
+        String theme;
+        long visits;
+    }
+
+    static class ClaimsCodec implements PayloadCodec<Claims> {
+
+        final AtomicInteger decodes = new AtomicInteger(0);
+
+        @Override
+        public Claims decode(JsonObject json) {
+            this.decodes.incrementAndGet();
+            return new Claims(json.get("role").getAsString(), json.get("level").getAsInt());
+        }
+
+        @Override
+        public JsonObject encode(Claims value) {
+            JsonObject result = new JsonObject();
+            result.addProperty("role", value.role);
+            result.addProperty("level", value.level);
+            return result;
+        }
+    }
+
+    @Test
+    public void testTypedSessionUse() throws Exception {
+        Utils.startST();
+        ClaimsCodec codec = new ClaimsCodec();
+        SuperTokens.config()
+                .withHosts("http://localhost:8080")
+                .withJwtPayloadType(Claims.class, codec);
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicReference<String> sessionHandle = new AtomicReference<>();
+        Javalin app = null;
+        try {
+            app = Javalin.create().start("localhost", 8081);
+
+            app.post("/create", ctx -> {
+                try {
+                    SessionBuilder builder = SuperTokens.newSession(ctx, "userId");
+                    builder.withJWTPayload(new Claims("admin", 3), Claims.class);
+                    Preferences preferences = new Preferences();
+                    preferences.theme = "dark";
+                    preferences.visits = 1;
+                    builder.withSessionData(preferences, Preferences.class);
+                    Session session = builder.create();
+                    sessionHandle.set(session.getSessionHandle());
+
+                    // decoded once, when the session was created
+                    assert (codec.decodes.get() == 1);
+                    Claims claims = session.getJWTPayload(Claims.class);
+                    assert (claims.role.equals("admin") && claims.level == 3);
+                    assert (session.getJWTPayload(Claims.class) == claims);
+                    assert (codec.decodes.get() == 1);
+                    assert (session.getJWTPayload().get("level").equals(3.0));
+
+                    Preferences data = session.getSessionData(Preferences.class);
+                    assert (data.theme.equals("dark") && data.visits == 1);
+                    data.visits = 2;
+                    session.updateSessionData(data, Preferences.class);
+                    assert (session.getSessionData(Preferences.class).visits == 2);
+
+                    session.updateJWTPayload(new Claims("user", 1), Claims.class);
+                    assert (codec.decodes.get() == 2);
+                    claims = session.getJWTPayload(Claims.class);
+                    assert (claims.role.equals("user") && claims.level == 1);
+                    assert (codec.decodes.get() == 2);
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+                ctx.result("");
+            });
+
+            app.before("/verify", SuperTokens.middleware());
+            app.post("/verify", ctx -> {
+                try {
+                    int decodes = codec.decodes.get();
+                    Session session = SuperTokens.getFromContext(ctx);
+                    assert (codec.decodes.get() == decodes);
+                    Claims claims = session.getJWTPayload(Claims.class);
+                    assert (claims.role.equals("user") && claims.level == 1);
+                    assert (codec.decodes.get() == decodes);
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+                ctx.result("");
+            });
+
+            Map<String, String> response = Utils.extractInfoFromResponse(HttpRequest.sendJsonPOSTRequest(
+                    "http://localhost:8081/create", new JsonObject(), null));
+            if (error.get() != null) {
+                throw new Exception(error.get());
+            }
+
+            {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Cookie", "sAccessToken=" + response.get("accessToken") + ";sIdRefreshToken=" +
+                        response.get("idRefreshTokenFromCookie"));
+                headers.put("anti-csrf", response.get("antiCsrf"));
+                Utils.extractInfoFromResponse(HttpRequest.sendJsonPOSTRequest("http://localhost:8081/verify",
+                        new JsonObject(), headers));
+            }
+            if (error.get() != null) {
+                throw new Exception(error.get());
+            }
+
+            Claims claims = SuperTokens.getJWTPayload(sessionHandle.get(), Claims.class);
+            assert (claims.role.equals("user") && claims.level == 1);
+            Preferences data = SuperTokens.getSessionData(sessionHandle.get(), Preferences.class);
+            assert (data.theme.equals("dark") && data.visits == 2);
+        } finally {
+            if (app != null) {
+                app.stop();
+            }
+        }
+    }
 }
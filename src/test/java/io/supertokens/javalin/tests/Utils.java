@@ -19,6 +19,11 @@ package io.supertokens.javalin.tests;
 import io.supertokens.javalin.Config;
 import io.supertokens.javalin.core.DeviceInfo;
 import io.supertokens.javalin.core.HandshakeInfo;
+import io.supertokens.javalin.core.PayloadCodecs;
+import io.supertokens.javalin.core.accessToken.AccessTokenCache;
+import io.supertokens.javalin.core.accessToken.PromotedRefreshTokenCache;
+import io.supertokens.javalin.core.accessToken.RejectedSignatureCache;
+import io.supertokens.javalin.core.querier.HttpTransport;
 import io.supertokens.javalin.core.querier.Querier;
 
 import java.io.*;
@@ -183,9 +188,14 @@ public class Utils {
             }
         });
         HandshakeInfo.reset();
+        AccessTokenCache.clear();
+        RejectedSignatureCache.clear();
+        PromotedRefreshTokenCache.clear();
         DeviceInfo.reset();
         Querier.reset();
+        HttpTransport.reset();
         Config.reset();
+        PayloadCodecs.reset();
     }
 
     static String startST() throws Exception {